@@ -65,7 +65,7 @@ public class AbstractTest
                 AppDatabase.class)
                 .allowMainThreadQueries()
                 .build();
-        torrentRepo = new TorrentRepositoryImpl(context, db);
+        torrentRepo = new TorrentRepositoryImpl(context, db, false);
         feedRepo = new FeedRepositoryImpl(context, db);
         engine = TorrentEngine.getInstance(context);
         tagRepo = new TagRepositoryImpl(db);
@@ -13,6 +13,7 @@ import org.proninyaroslav.libretorrent.core.model.AddTorrentParams;
 import org.proninyaroslav.libretorrent.core.model.data.Priority;
 import org.proninyaroslav.libretorrent.core.model.data.TorrentStateCode;
 import org.proninyaroslav.libretorrent.core.model.data.PeerInfo;
+import org.proninyaroslav.libretorrent.core.model.data.PiecesUpdate;
 import org.proninyaroslav.libretorrent.core.model.data.TrackerInfo;
 import org.proninyaroslav.libretorrent.core.utils.Utils;
 
@@ -187,11 +188,21 @@ public class TorrentInfoProviderTest extends AbstractTest
         Disposable d = stateProvider.observePiecesInfo(params.sha1hash)
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe((pieces) -> {
+                .subscribe((update) -> {
+                    /* The first update is always the full state */
+                    if (c.getCount() > 0)
+                        assertTrue(update.isFull());
                     c.countDown();
-                    assertNotEquals(0, pieces.length);
+                    assertNotEquals(0, update.numPieces);
                     boolean[] expectedPieces = engine.getPieces(params.sha1hash);
-                    assertEquals(expectedPieces.length, pieces.length);
+                    assertEquals(expectedPieces.length, update.numPieces);
+                    if (update.isFull()) {
+                        assertEquals(PiecesUpdate.wordsCount(update.numPieces), update.bitset.length);
+                        assertEquals(0, update.finishedPieces.length);
+                    }
+                    /* Finished pieces stay finished */
+                    for (int piece : update.finishedPieces)
+                        assertTrue(expectedPieces[piece]);
                 });
 
         try {
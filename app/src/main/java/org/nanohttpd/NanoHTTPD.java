@@ -44,6 +44,7 @@ import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -170,8 +171,18 @@ public abstract class NanoHTTPD {
             try {
                 outputStream = this.acceptSocket.getOutputStream();
                 TempFileManager tempFileManager = NanoHTTPD.this.tempFileManagerFactory.create();
-                HTTPSession session = new HTTPSession(tempFileManager, this.inputStream, outputStream, this.acceptSocket.getInetAddress());
+                int keepAliveTimeout = NanoHTTPD.this.keepAliveTimeout;
+                InputStream sessionInputStream = this.inputStream;
+                if (keepAliveTimeout > 0) {
+                    sessionInputStream = new ReadTimeoutInputStream(this.inputStream, this.acceptSocket, this.acceptSocket.getSoTimeout());
+                }
+                HTTPSession session = new HTTPSession(tempFileManager, sessionInputStream, outputStream, this.acceptSocket.getInetAddress());
                 while (!this.acceptSocket.isClosed()) {
+                    // Wait for the next request with the keep-alive timeout,
+                    // the read timeout is restored when it arrives
+                    if (keepAliveTimeout > 0) {
+                        this.acceptSocket.setSoTimeout(keepAliveTimeout);
+                    }
                     session.execute();
                 }
             } catch (Exception e) {
@@ -193,6 +204,35 @@ public abstract class NanoHTTPD {
             }
         }
     }
+    /**
+     * Sets the socket read timeout once the data are received.
+     */
+    private static class ReadTimeoutInputStream extends FilterInputStream {
+        private final Socket socket;
+        private final int readTimeout;
+        private ReadTimeoutInputStream(InputStream in, Socket socket, int readTimeout) {
+            super(in);
+            this.socket = socket;
+            this.readTimeout = readTimeout;
+        }
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            restoreReadTimeout(b >= 0 ? 1 : -1);
+            return b;
+        }
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            restoreReadTimeout(read);
+            return read;
+        }
+        private void restoreReadTimeout(int read) throws IOException {
+            if (read > 0 && this.socket.getSoTimeout() != this.readTimeout) {
+                this.socket.setSoTimeout(this.readTimeout);
+            }
+        }
+    }
     public static class Cookie {
         public static String getHTTPTime(int days) {
             Calendar calendar = Calendar.getInstance();
@@ -1534,6 +1574,11 @@ public abstract class NanoHTTPD {
      * Pluggable strategy for asynchronously executing requests.
      */
     protected AsyncRunner asyncRunner;
+    /**
+     * Maximum time to wait for the next request of a keep-alive connection
+     * (in milliseconds), 0 to use the socket read timeout.
+     */
+    private int keepAliveTimeout;
     /**
      * Pluggable strategy for creating and cleaning up temporary files.
      */
@@ -1776,6 +1821,17 @@ public abstract class NanoHTTPD {
     public void setAsyncRunner(AsyncRunner asyncRunner) {
         this.asyncRunner = asyncRunner;
     }
+    /**
+     * Sets the maximum time to wait for the next request of a keep-alive
+     * connection, it's usually shorter than the socket read timeout, so
+     * that idle connections don't hold the threads.
+     *
+     * @param keepAliveTimeout
+     *            timeout in milliseconds, 0 to use the socket read timeout.
+     */
+    public void setKeepAliveTimeout(int keepAliveTimeout) {
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
     /**
      * Pluggable strategy for creating and cleaning up temporary files.
      *
@@ -44,7 +44,8 @@ public class RepositoryHelper
     {
         if (torrentRepo == null)
             torrentRepo = new TorrentRepositoryImpl(appContext,
-                    AppDatabase.getInstance(appContext));
+                    AppDatabase.getInstance(appContext),
+                    getSettingsRepository(appContext).resumeJournal());
 
         return torrentRepo;
     }
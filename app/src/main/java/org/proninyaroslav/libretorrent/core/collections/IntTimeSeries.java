@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.collections;
+
+import androidx.annotation.NonNull;
+
+/*
+ * A fixed-size series of int samples, stored in two primitive ring buffers:
+ * the last samples as is, and older samples aggregated by periods
+ * (min, max and average of each period). Adding a sample doesn't allocate memory.
+ */
+
+public class IntTimeSeries
+{
+    public static final class Stats
+    {
+        public int min;
+        public int max;
+        public double avg;
+        /* Number of samples in the window */
+        public int count;
+
+        void reset()
+        {
+            min = Integer.MAX_VALUE;
+            max = Integer.MIN_VALUE;
+            avg = 0;
+            count = 0;
+        }
+    }
+
+    private final int samplesPerPeriod;
+    private final int periods;
+
+    private final int[] samples;
+    private int samplesHead;
+    private int samplesCount;
+
+    /* Current (incomplete) period */
+    private int periodMin;
+    private int periodMax;
+    private long periodSum;
+    private int periodCount;
+
+    private final int[] periodsMin;
+    private final int[] periodsMax;
+    private final int[] periodsAvg;
+    private int periodsHead;
+    private int periodsCount;
+
+    public IntTimeSeries(int samplesPerPeriod, int periods)
+    {
+        if (samplesPerPeriod <= 0)
+            throw new IllegalArgumentException("Samples per period must be greater than 0");
+
+        if (periods <= 0)
+            throw new IllegalArgumentException("Periods must be greater than 0");
+
+        this.samplesPerPeriod = samplesPerPeriod;
+        this.periods = periods;
+        samples = new int[samplesPerPeriod];
+        periodsMin = new int[periods];
+        periodsMax = new int[periods];
+        periodsAvg = new int[periods];
+        resetPeriod();
+    }
+
+    /*
+     * Max number of samples that can be queried
+     */
+
+    public int capacity()
+    {
+        return samplesPerPeriod * periods;
+    }
+
+    public synchronized void add(int value)
+    {
+        samples[samplesHead] = value;
+        samplesHead = (samplesHead + 1) % samplesPerPeriod;
+        if (samplesCount < samplesPerPeriod)
+            ++samplesCount;
+
+        if (value < periodMin)
+            periodMin = value;
+        if (value > periodMax)
+            periodMax = value;
+        periodSum += value;
+        if (++periodCount == samplesPerPeriod) {
+            periodsMin[periodsHead] = periodMin;
+            periodsMax[periodsHead] = periodMax;
+            periodsAvg[periodsHead] = (int)(periodSum / periodCount);
+            periodsHead = (periodsHead + 1) % periods;
+            if (periodsCount < periods)
+                ++periodsCount;
+            resetPeriod();
+        }
+    }
+
+    /*
+     * Calculates min, max and average of the last samples.
+     * If the window is greater than the number of last samples
+     * stored as is, the older ones are taken with the period precision.
+     * Returns false if there are no samples.
+     */
+
+    public synchronized boolean stats(int lastSamples, @NonNull Stats out)
+    {
+        out.reset();
+        if (lastSamples <= 0)
+            return false;
+
+        if (lastSamples <= samplesPerPeriod) {
+            int n = Math.min(lastSamples, samplesCount);
+            long sum = 0;
+            for (int i = 1; i <= n; i++) {
+                int value = samples[(samplesHead - i + samplesPerPeriod) % samplesPerPeriod];
+                if (value < out.min)
+                    out.min = value;
+                if (value > out.max)
+                    out.max = value;
+                sum += value;
+            }
+            out.count = n;
+            if (n > 0)
+                out.avg = (double)sum / n;
+
+            return n > 0;
+        }
+
+        long sum = 0;
+        if (periodCount > 0) {
+            out.min = periodMin;
+            out.max = periodMax;
+            sum = periodSum;
+            out.count = periodCount;
+        }
+        int remaining = lastSamples - periodCount;
+        int n = Math.min(periodsCount, (remaining + samplesPerPeriod - 1) / samplesPerPeriod);
+        for (int i = 1; i <= n; i++) {
+            int pos = (periodsHead - i + periods) % periods;
+            if (periodsMin[pos] < out.min)
+                out.min = periodsMin[pos];
+            if (periodsMax[pos] > out.max)
+                out.max = periodsMax[pos];
+            sum += (long)periodsAvg[pos] * samplesPerPeriod;
+            out.count += samplesPerPeriod;
+        }
+        if (out.count > 0)
+            out.avg = (double)sum / out.count;
+
+        return out.count > 0;
+    }
+
+    public synchronized void clear()
+    {
+        samplesHead = 0;
+        samplesCount = 0;
+        periodsHead = 0;
+        periodsCount = 0;
+        resetPeriod();
+    }
+
+    private void resetPeriod()
+    {
+        periodMin = Integer.MAX_VALUE;
+        periodMax = Integer.MIN_VALUE;
+        periodSum = 0;
+        periodCount = 0;
+    }
+}
@@ -51,6 +51,10 @@ import org.proninyaroslav.libretorrent.core.model.data.metainfo.TorrentMetaInfo;
 import org.proninyaroslav.libretorrent.core.model.session.TorrentDownload;
 import org.proninyaroslav.libretorrent.core.model.session.TorrentSession;
 import org.proninyaroslav.libretorrent.core.model.session.TorrentSessionImpl;
+import org.proninyaroslav.libretorrent.core.model.session.ThroughputRecorder;
+import org.proninyaroslav.libretorrent.core.model.session.TorrentStatusSnapshot;
+import org.proninyaroslav.libretorrent.core.model.stream.PieceCache;
+import org.proninyaroslav.libretorrent.core.model.stream.StreamStats;
 import org.proninyaroslav.libretorrent.core.model.stream.TorrentInputStream;
 import org.proninyaroslav.libretorrent.core.model.stream.TorrentStream;
 import org.proninyaroslav.libretorrent.core.model.stream.TorrentStreamServer;
@@ -74,12 +78,17 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import io.reactivex.BackpressureStrategy;
 import io.reactivex.Completable;
@@ -96,10 +105,12 @@ import io.reactivex.schedulers.Schedulers;
 public class TorrentEngine
 {
     private static final String TAG = TorrentEngine.class.getSimpleName();
+    private static final int LOAD_TASK_TIMEOUT = 30; /* sec */
 
     private Context appContext;
     private TorrentSession session;
     private TorrentStreamServer torrentStreamServer;
+    private PieceCache pieceCache;
     private TorrentRepository repo;
     private TagRepository tagRepo;
     private SettingsRepository pref;
@@ -136,6 +147,7 @@ public class TorrentEngine
         pref = RepositoryHelper.getSettingsRepository(appContext);
         notifier = TorrentNotifier.getInstance(appContext);
         downloadsCompleted = new DownloadsCompletedListener(this);
+        pieceCache = new PieceCache(pref.streamingCacheSize() * 1024L * 1024L);
         session = new TorrentSessionImpl(repo,
                 fs,
                 SystemFacadeHelper.getSystemFacade(appContext));
@@ -508,10 +520,30 @@ public class TorrentEngine
         session.cancelFetchMagnet(infoHash);
     }
 
+    /*
+     * Returns the task, loading it if the torrent is restored on demand.
+     * Do not run in the UI thread
+     */
+
+    private TorrentDownload loadTask(String id)
+    {
+        try {
+            return session.loadTask(id).get(LOAD_TASK_TIMEOUT, TimeUnit.SECONDS);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+        } catch (ExecutionException | TimeoutException e) {
+            Log.e(TAG, "Unable to load torrent " + id + ": " + Log.getStackTraceString(e));
+        }
+
+        return null;
+    }
+
     public void pauseResumeTorrent(@NonNull String id)
     {
         disposables.add(Completable.fromRunnable(() -> {
-            TorrentDownload task = session.getTask(id);
+            TorrentDownload task = loadTask(id);
             if (task == null)
                 return;
             try {
@@ -536,9 +568,10 @@ public class TorrentEngine
                     if (!isRunning())
                         return;
 
-                    TorrentDownload task = session.getTask(id);
-                    if (task != null)
-                        task.forceRecheck();
+                    session.loadTask(id).thenAccept((task) -> {
+                        if (task != null)
+                            task.forceRecheck();
+                    });
                 }));
     }
 
@@ -550,9 +583,10 @@ public class TorrentEngine
                     if (!isRunning())
                         return;
 
-                    TorrentDownload task = session.getTask(id);
-                    if (task != null)
-                        task.requestTrackerAnnounce();
+                    session.loadTask(id).thenAccept((task) -> {
+                        if (task != null)
+                            task.requestTrackerAnnounce();
+                    });
                 }));
     }
 
@@ -656,7 +690,7 @@ public class TorrentEngine
         if (!isRunning())
             return null;
 
-        TorrentDownload task = session.getTask(id);
+        TorrentDownload task = loadTask(id);
         if (task == null)
             return null;
 
@@ -790,7 +824,7 @@ public class TorrentEngine
         if (!isRunning())
             return null;
 
-        TorrentDownload task = session.getTask(id);
+        TorrentDownload task = loadTask(id);
         if (task == null)
             return null;
 
@@ -799,7 +833,21 @@ public class TorrentEngine
 
     public TorrentInputStream getTorrentInputStream(@NonNull TorrentStream stream)
     {
-        return new TorrentInputStream(session, stream);
+        return new TorrentInputStream(session, stream, pieceCache);
+    }
+
+    /*
+     * Returns metrics of the streams being served by the streaming server
+     */
+
+    @NonNull
+    public List<StreamStats> getStreamStats()
+    {
+        TorrentStreamServer server = torrentStreamServer;
+        if (server == null)
+            return new ArrayList<>();
+
+        return server.getStreamStats();
     }
 
     /*
@@ -818,7 +866,10 @@ public class TorrentEngine
 
     private TorrentInfo makeInfo(Torrent torrent, List<TagInfo> tags) {
         TorrentDownload task = session.getTask(torrent.id);
-        if (task == null || !task.isValid() || task.isStopped()) {
+        TorrentStatusSnapshot status = (task == null || task.isStopped() ?
+                null :
+                task.getStatusSnapshot());
+        if (status == null) {
             return new TorrentInfo(
                     torrent.id,
                     torrent.name,
@@ -830,19 +881,19 @@ public class TorrentEngine
             return new TorrentInfo(
                     torrent.id,
                     torrent.name,
-                    task.getStateCode(),
-                    task.getProgress(),
-                    task.getReceivedBytes(),
-                    task.getTotalSentBytes(),
-                    task.getTotalWanted(),
-                    task.getDownloadSpeed(),
-                    task.getUploadSpeed(),
-                    task.getETA(),
+                    status.stateCode,
+                    status.progress,
+                    status.receivedBytes,
+                    status.totalSentBytes,
+                    status.totalWanted,
+                    status.downloadSpeed,
+                    status.uploadSpeed,
+                    status.eta,
                     torrent.dateAdded,
-                    task.getTotalPeers(),
-                    task.getConnectedPeers(),
+                    status.totalPeers,
+                    status.connectedPeers,
                     torrent.error,
-                    task.isSequentialDownload(),
+                    status.sequentialDownload,
                     task.getFilePriorities(),
                     tags,
                     task.isFirstLastPiecePriority()
@@ -856,13 +907,14 @@ public class TorrentEngine
 
     public List<TorrentInfo> makeInfoListSync() {
         ArrayList<TorrentInfo> stateList = new ArrayList<>();
+        Map<String, List<TagInfo>> tagsIndex = tagRepo.getTorrentsTagsIndex();
 
         for (Torrent torrent : repo.getAllTorrents()) {
             if (torrent == null) {
                 continue;
             }
-            List<TagInfo> tags = tagRepo.getByTorrentId(torrent.id);
-            stateList.add(makeInfo(torrent, tags));
+            List<TagInfo> tags = tagsIndex.get(torrent.id);
+            stateList.add(makeInfo(torrent, tags == null ? Collections.emptyList() : tags));
         }
 
         return stateList;
@@ -885,21 +937,25 @@ public class TorrentEngine
         if (torrent == null)
             return null;
 
+        TorrentStatusSnapshot status = task.getStatusSnapshot();
+        if (status == null)
+            return null;
+
         int[] piecesAvail = task.getPiecesAvailability();
 
         return new AdvancedTorrentInfo(
                 torrent.id,
                 task.getFilesReceivedBytes(),
-                task.getTotalSeeds(),
-                task.getConnectedSeeds(),
-                task.getNumDownloadedPieces(),
-                task.getShareRatio(),
-                task.getActiveTime(),
-                task.getSeedingTime(),
+                status.totalSeeds,
+                status.connectedSeeds,
+                status.numDownloadedPieces,
+                status.shareRatio,
+                status.activeTime,
+                status.seedingTime,
                 task.getAvailability(piecesAvail),
                 task.getFilesAvailability(piecesAvail),
-                task.getConnectedLeechers(),
-                task.getTotalLeechers());
+                status.connectedLeechers,
+                status.totalLeechers);
     }
 
     public List<TrackerInfo> makeTrackerInfoList(@NonNull String id)
@@ -1008,6 +1064,11 @@ public class TorrentEngine
         return session.getLogger();
     }
 
+    public ThroughputRecorder getThroughputRecorder()
+    {
+        return session.getThroughputRecorder();
+    }
+
     private void saveTorrentFileIn(@NonNull Torrent torrent,
                                    @NonNull Uri saveDir)
     {
@@ -1124,7 +1185,8 @@ public class TorrentEngine
         String hostname = pref.streamingHostname();
         int port = pref.streamingPort();
 
-        torrentStreamServer = new TorrentStreamServer(hostname, port);
+        torrentStreamServer = new TorrentStreamServer(hostname, port,
+                pref.streamingMaxClients(), pref.streamingMaxQueuedClients());
         try {
             torrentStreamServer.start(appContext);
 
@@ -1139,11 +1201,13 @@ public class TorrentEngine
         if (torrentStreamServer != null)
             torrentStreamServer.stop();
         torrentStreamServer = null;
+        pieceCache.clear();
     }
 
     private void loadTorrents()
     {
         disposables.add(Completable.fromRunnable(() -> {
+            repo.warmUpCache();
             if (isRunning())
                 session.restoreTorrents();
 
@@ -1374,6 +1438,12 @@ public class TorrentEngine
             }
         }
 
+        @Override
+        public void onTorrentRemoved(@NonNull String id)
+        {
+            pieceCache.remove(id);
+        }
+
         @Override
         public void onTorrentFinished(@NonNull String id)
         {
@@ -1691,14 +1761,24 @@ public class TorrentEngine
                 stopStreamingServer();
 
         } else if (key.equals(appContext.getString(R.string.pref_key_streaming_port)) ||
-                key.equals(appContext.getString(R.string.pref_key_streaming_hostname))) {
+                key.equals(appContext.getString(R.string.pref_key_streaming_hostname)) ||
+                key.equals(appContext.getString(R.string.pref_key_streaming_max_clients)) ||
+                key.equals(appContext.getString(R.string.pref_key_streaming_max_queued_clients))) {
             startStreamingServer();
 
+        } else if (key.equals(appContext.getString(R.string.pref_key_streaming_cache_size))) {
+            pieceCache.setMaxSize(pref.streamingCacheSize() * 1024L * 1024L);
+
         } else if (key.equals(appContext.getString(R.string.pref_key_anonymous_mode))) {
             SessionSettings s = session.getSettings();
             s.anonymousMode = pref.anonymousMode();
             session.setSettings(s);
 
+        } else if (key.equals(appContext.getString(R.string.pref_key_restore_paused_on_demand))) {
+            SessionSettings s = session.getSettings();
+            s.restorePausedOnDemand = pref.restorePausedOnDemand();
+            session.setSettings(s);
+
         } else if (key.equals(appContext.getString(R.string.pref_key_seeding_outgoing_connections))) {
             SessionSettings s = session.getSettings();
             s.seedingOutgoingConnections = pref.seedingOutgoingConnections();
@@ -21,7 +21,6 @@ package org.proninyaroslav.libretorrent.core.model;
 
 import androidx.annotation.NonNull;
 
-import org.proninyaroslav.libretorrent.core.model.data.ReadPieceInfo;
 import org.proninyaroslav.libretorrent.core.model.data.SessionStats;
 import org.proninyaroslav.libretorrent.core.model.data.TorrentStateCode;
 
@@ -65,8 +64,6 @@ public abstract class TorrentEngineListener
 
     public void onNatError(@NonNull String errorMsg) {}
 
-    public void onReadPiece(@NonNull String id, ReadPieceInfo info) {}
-
     public void onPieceFinished(@NonNull String id, int piece) {}
 
     public void onSessionStats(@NonNull SessionStats stats) {}
@@ -27,15 +27,20 @@ import androidx.annotation.NonNull;
 import org.proninyaroslav.libretorrent.core.RepositoryHelper;
 import org.proninyaroslav.libretorrent.core.model.data.AdvancedTorrentInfo;
 import org.proninyaroslav.libretorrent.core.model.data.PeerInfo;
+import org.proninyaroslav.libretorrent.core.model.data.PiecesUpdate;
 import org.proninyaroslav.libretorrent.core.model.data.SessionStats;
 import org.proninyaroslav.libretorrent.core.model.data.TorrentInfo;
+import org.proninyaroslav.libretorrent.core.model.data.TorrentInfoChanges;
 import org.proninyaroslav.libretorrent.core.model.data.TorrentStateCode;
 import org.proninyaroslav.libretorrent.core.model.data.TrackerInfo;
 import org.proninyaroslav.libretorrent.core.storage.TagRepository;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import io.reactivex.BackpressureStrategy;
@@ -59,6 +64,8 @@ public class TorrentInfoProvider {
     private static volatile TorrentInfoProvider INSTANCE;
     private TorrentEngine engine;
     private TagRepository tagRepo;
+    /* Shared by all subscribers, lives while there is at least one subscriber */
+    private final Flowable<List<TorrentInfo>> infoListFlowable;
 
     public static TorrentInfoProvider getInstance(
             @NonNull TorrentEngine engine,
@@ -89,6 +96,9 @@ public class TorrentInfoProvider {
     private TorrentInfoProvider(TorrentEngine engine, TagRepository tagRepo) {
         this.engine = engine;
         this.tagRepo = tagRepo;
+        this.infoListFlowable = makeInfoListFlowable()
+                .replay(1)
+                .refCount();
     }
 
     public Flowable<TorrentInfo> observeInfo(@NonNull String id) {
@@ -96,7 +106,16 @@ public class TorrentInfoProvider {
     }
 
     public Flowable<List<TorrentInfo>> observeInfoList() {
-        return makeInfoListFlowable();
+        return infoListFlowable;
+    }
+
+    /*
+     * Emits only added, updated and removed torrents since the previous emission.
+     * The first emission contains all torrents as added.
+     */
+
+    public Flowable<TorrentInfoChanges> observeInfoChanges() {
+        return makeInfoChangesFlowable();
     }
 
     public Single<List<TorrentInfo>> getInfoListSingle() {
@@ -115,7 +134,11 @@ public class TorrentInfoProvider {
         return makePeersInfoFlowable(id);
     }
 
-    public Flowable<boolean[]> observePiecesInfo(@NonNull String id) {
+    /*
+     * Emits the full pieces state first, and then only batches of finished pieces
+     */
+
+    public Flowable<PiecesUpdate> observePiecesInfo(@NonNull String id) {
         return makePiecesFlowable(id);
     }
 
@@ -237,15 +260,17 @@ public class TorrentInfoProvider {
 
     private Flowable<List<TorrentInfo>> makeInfoListFlowable() {
         return Flowable.create((emitter) -> {
-            final AtomicReference<List<TorrentInfo>> infoList = new AtomicReference<>();
+            final Map<String, TorrentInfo> snapshot = new HashMap<>();
 
+            /*
+             * Fetch, diff and emit in one step, so that concurrent triggers
+             * don't emit an older list after a newer one or call onNext() concurrently
+             */
             Runnable handleInfo = () -> {
-                List<TorrentInfo> newInfoList = engine.makeInfoListSync();
-                List<TorrentInfo> oldInfoList = infoList.get();
-                if (oldInfoList == null || oldInfoList.size() != newInfoList.size() ||
-                        !oldInfoList.containsAll(newInfoList)) {
-                    infoList.set(newInfoList);
-                    if (!emitter.isCancelled())
+                synchronized (snapshot) {
+                    List<TorrentInfo> newInfoList = engine.makeInfoListSync();
+                    TorrentInfoChanges changes = TorrentInfoChanges.diff(snapshot, newInfoList);
+                    if (!changes.isEmpty() && !emitter.isCancelled())
                         emitter.onNext(newInfoList);
                 }
             };
@@ -286,10 +311,14 @@ public class TorrentInfoProvider {
 
             if (!emitter.isCancelled()) {
                 Thread t = new Thread(() -> {
-                    infoList.set(engine.makeInfoListSync());
-                    if (!emitter.isCancelled()) {
+                    synchronized (snapshot) {
+                        List<TorrentInfo> infoList = engine.makeInfoListSync();
+                        TorrentInfoChanges.diff(snapshot, infoList);
                         /* Emit once to avoid missing any data and also easy chaining */
-                        emitter.onNext(infoList.get());
+                        if (!emitter.isCancelled())
+                            emitter.onNext(infoList);
+                    }
+                    if (!emitter.isCancelled()) {
                         engine.addListener(listener);
                         CompositeDisposable disposables = new CompositeDisposable();
                         disposables.add(Disposables.fromAction(() ->
@@ -307,6 +336,25 @@ public class TorrentInfoProvider {
         }, BackpressureStrategy.LATEST);
     }
 
+    private Flowable<TorrentInfoChanges> makeInfoChangesFlowable() {
+        return Flowable.defer(() -> {
+            /* Each subscriber has its own snapshot, the list itself is shared */
+            final Map<String, TorrentInfo> snapshot = new HashMap<>();
+            final AtomicBoolean first = new AtomicBoolean(true);
+
+            return infoListFlowable
+                    .onBackpressureLatest()
+                    .concatMap((infoList) -> {
+                        TorrentInfoChanges changes = TorrentInfoChanges.diff(snapshot, infoList);
+                        if (first.getAndSet(false))
+                            /* Emit once to avoid missing any data and also easy chaining */
+                            return Flowable.just(TorrentInfoChanges.allAdded(infoList));
+                        else
+                            return (changes.isEmpty() ? Flowable.empty() : Flowable.just(changes));
+                    });
+        });
+    }
+
     private Single<List<TorrentInfo>> makeInfoListSingle() {
         return Single.create((emitter) -> {
             if (!emitter.isDisposed()) {
@@ -420,36 +468,110 @@ public class TorrentInfoProvider {
         }, BackpressureStrategy.LATEST);
     }
 
-    private Flowable<boolean[]> makePiecesFlowable(String id) {
+    private Flowable<PiecesUpdate> makePiecesFlowable(String id) {
         return Flowable.create((emitter) -> {
-            final AtomicReference<boolean[]> infoList = new AtomicReference<>();
+            final Object lock = new Object();
+            /* Guarded by lock */
+            final int[] numPieces = new int[1];
+            final boolean[] needFullUpdate = new boolean[1];
+            final ArrayList<Integer> finishedPieces = new ArrayList<>();
+            /* Updates are sent by the timer and the initial thread, one at a time */
+            final Object sendLock = new Object();
+
+            Runnable sendUpdate = () -> {
+                synchronized (sendLock) {
+                    PiecesUpdate update = null;
+                    boolean full;
+                    synchronized (lock) {
+                        full = needFullUpdate[0];
+                        needFullUpdate[0] = false;
+                        /*
+                         * Pieces finished before the full state is fetched are included
+                         * in it, the later ones are sent with the next delta
+                         */
+                        if (full) {
+                            finishedPieces.clear();
+                        } else if (!finishedPieces.isEmpty()) {
+                            int[] finished = new int[finishedPieces.size()];
+                            for (int i = 0; i < finished.length; i++)
+                                finished[i] = finishedPieces.get(i);
+                            finishedPieces.clear();
+                            update = PiecesUpdate.delta(numPieces[0], finished);
+                        }
+                    }
+                    if (full) {
+                        update = PiecesUpdate.full(engine.getPieces(id));
+                        synchronized (lock) {
+                            numPieces[0] = update.numPieces;
+                        }
+                    }
+                    if (update != null && !emitter.isCancelled())
+                        emitter.onNext(update);
+                }
+            };
 
-            Disposable d = Observable.interval(GET_INFO_SYNC_TIME, TimeUnit.MILLISECONDS)
-                    .subscribe((__) -> {
-                                boolean[] newInfoList = engine.getPieces(id);
-                                boolean[] oldInfoList = infoList.get();
-                                if (!Arrays.equals(oldInfoList, newInfoList)) {
-                                    infoList.set(newInfoList);
-                                    if (!emitter.isCancelled())
-                                        emitter.onNext(newInfoList);
-                                }
-                            },
-                            (Throwable t) -> Log.e(TAG, "Getting pieces for torrent " + id + " error: " +
-                                    Log.getStackTraceString(t)));
+            TorrentEngineListener listener = new TorrentEngineListener() {
+                @Override
+                public void onPieceFinished(@NonNull String torrentId, int piece) {
+                    if (!id.equals(torrentId))
+                        return;
+                    synchronized (lock) {
+                        finishedPieces.add(piece);
+                    }
+                }
+
+                @Override
+                public void onTorrentStateChanged(@NonNull String torrentId,
+                                                  @NonNull TorrentStateCode prevState,
+                                                  @NonNull TorrentStateCode curState) {
+                    if (!id.equals(torrentId))
+                        return;
+                    /* Pieces can be unset after checking */
+                    if (prevState == TorrentStateCode.CHECKING || curState == TorrentStateCode.CHECKING) {
+                        synchronized (lock) {
+                            needFullUpdate[0] = true;
+                        }
+                    }
+                }
+
+                @Override
+                public void onTorrentMetadataLoaded(@NonNull String torrentId, Exception err) {
+                    if (!id.equals(torrentId))
+                        return;
+                    synchronized (lock) {
+                        needFullUpdate[0] = true;
+                    }
+                }
+            };
 
             if (!emitter.isCancelled()) {
                 Thread t = new Thread(() -> {
-                    infoList.set(engine.getPieces(id));
+                    /* Finished pieces after the full update are idempotent */
+                    engine.addListener(listener);
+                    synchronized (lock) {
+                        needFullUpdate[0] = true;
+                    }
+                    /* Emit once to avoid missing any data and also easy chaining */
+                    sendUpdate.run();
                     if (!emitter.isCancelled()) {
-                        /* Emit once to avoid missing any data and also easy chaining */
-                        emitter.onNext(infoList.get());
-                        emitter.setDisposable(d);
+                        CompositeDisposable disposables = new CompositeDisposable();
+                        disposables.add(Disposables.fromAction(() ->
+                                engine.removeListener(listener))
+                        );
+                        disposables.add(Observable.interval(GET_INFO_SYNC_TIME, TimeUnit.MILLISECONDS)
+                                .subscribe((__) -> sendUpdate.run(),
+                                        (Throwable e) -> Log.e(TAG, "Getting pieces for torrent " + id + " error: " +
+                                                Log.getStackTraceString(e)))
+                        );
+                        emitter.setDisposable(disposables);
+                    } else {
+                        engine.removeListener(listener);
                     }
                 });
                 t.start();
             }
 
-        }, BackpressureStrategy.LATEST);
+        }, BackpressureStrategy.BUFFER);
     }
 
     private Flowable<String> makeTorrentsDeletedFlowable() {
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/*
+ * Either the full pieces state as a bitset (64 pieces per word),
+ * or indexes of the pieces finished since the previous update.
+ */
+
+public class PiecesUpdate
+{
+    public final int numPieces;
+    /* Not null for the full state */
+    @Nullable
+    public final long[] bitset;
+    @NonNull
+    public final int[] finishedPieces;
+
+    private PiecesUpdate(int numPieces, @Nullable long[] bitset, @NonNull int[] finishedPieces)
+    {
+        this.numPieces = numPieces;
+        this.bitset = bitset;
+        this.finishedPieces = finishedPieces;
+    }
+
+    public static PiecesUpdate full(@NonNull boolean[] pieces)
+    {
+        long[] bitset = new long[wordsCount(pieces.length)];
+        for (int i = 0; i < pieces.length; i++) {
+            if (pieces[i])
+                bitset[i >>> 6] |= 1L << i;
+        }
+
+        return new PiecesUpdate(pieces.length, bitset, new int[0]);
+    }
+
+    public static PiecesUpdate delta(int numPieces, @NonNull int[] finishedPieces)
+    {
+        return new PiecesUpdate(numPieces, null, finishedPieces);
+    }
+
+    public boolean isFull()
+    {
+        return bitset != null;
+    }
+
+    public static int wordsCount(int numPieces)
+    {
+        return (numPieces + 63) >>> 6;
+    }
+
+    public static boolean isSet(@NonNull long[] bitset, int piece)
+    {
+        return (bitset[piece >>> 6] & (1L << piece)) != 0;
+    }
+
+    @NonNull
+    @Override
+    public String toString()
+    {
+        return "PiecesUpdate{" +
+                "numPieces=" + numPieces +
+                ", full=" + isFull() +
+                ", finishedPieces=" + Arrays.toString(finishedPieces) +
+                '}';
+    }
+}
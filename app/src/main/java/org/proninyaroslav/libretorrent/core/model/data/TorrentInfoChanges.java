@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.data;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+ * Set of changes between two torrent info lists, keyed by torrent id.
+ */
+
+public class TorrentInfoChanges {
+    @NonNull
+    public final List<TorrentInfo> added;
+    @NonNull
+    public final List<TorrentInfo> updated;
+    @NonNull
+    public final List<String> removed;
+
+    public TorrentInfoChanges(
+            @NonNull List<TorrentInfo> added,
+            @NonNull List<TorrentInfo> updated,
+            @NonNull List<String> removed
+    ) {
+        this.added = added;
+        this.updated = updated;
+        this.removed = removed;
+    }
+
+    /*
+     * Computes changes between the previous snapshot and the new list
+     * and replaces the snapshot content with the new list.
+     */
+
+    @NonNull
+    public static TorrentInfoChanges diff(
+            @NonNull Map<String, TorrentInfo> snapshot,
+            @NonNull List<TorrentInfo> newInfoList
+    ) {
+        var added = new ArrayList<TorrentInfo>();
+        var updated = new ArrayList<TorrentInfo>();
+        var newSnapshot = new HashMap<String, TorrentInfo>(newInfoList.size() * 2);
+
+        for (var info : newInfoList) {
+            newSnapshot.put(info.torrentId, info);
+            var oldInfo = snapshot.remove(info.torrentId);
+            if (oldInfo == null) {
+                added.add(info);
+            } else if (oldInfo.hashCode() != info.hashCode() || !oldInfo.equals(info)) {
+                updated.add(info);
+            }
+        }
+        /* All that remained in the old snapshot is removed */
+        var removed = new ArrayList<>(snapshot.keySet());
+
+        snapshot.clear();
+        snapshot.putAll(newSnapshot);
+
+        return new TorrentInfoChanges(added, updated, removed);
+    }
+
+    @NonNull
+    public static TorrentInfoChanges allAdded(@NonNull List<TorrentInfo> infoList) {
+        return new TorrentInfoChanges(
+                new ArrayList<>(infoList),
+                Collections.emptyList(),
+                Collections.emptyList()
+        );
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+    }
+
+    /*
+     * Applies changes to the map of torrent info, keyed by torrent id.
+     * Updated rows are replaced in place, so a LinkedHashMap keeps
+     * the order of the first emission
+     */
+
+    public void applyTo(@NonNull Map<String, TorrentInfo> infoMap) {
+        applyTo(infoMap, (info) -> info);
+    }
+
+    /*
+     * Same as above, only added and updated rows are converted
+     */
+
+    public <T> void applyTo(
+            @NonNull Map<String, T> map,
+            @NonNull Function<TorrentInfo, T> converter
+    ) {
+        for (var id : removed) {
+            map.remove(id);
+        }
+        for (var info : added) {
+            map.put(info.torrentId, converter.apply(info));
+        }
+        for (var info : updated) {
+            map.put(info.torrentId, converter.apply(info));
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "TorrentInfoChanges{" +
+                "added=" + added.size() +
+                ", updated=" + updated.size() +
+                ", removed=" + removed.size() +
+                '}';
+    }
+}
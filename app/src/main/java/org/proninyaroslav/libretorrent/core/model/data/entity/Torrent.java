@@ -100,6 +100,22 @@ public class Torrent implements Parcelable
         this.magnet = magnet;
     }
 
+    @Ignore
+    public Torrent(@NonNull Torrent torrent)
+    {
+        id = torrent.id;
+        magnet = torrent.magnet;
+        downloadPath = torrent.downloadPath;
+        name = torrent.name;
+        downloadingMetadata = torrent.downloadingMetadata;
+        dateAdded = torrent.dateAdded;
+        error = torrent.error;
+        manuallyPaused = torrent.manuallyPaused;
+        visibility = torrent.visibility;
+        sequentialDownload = torrent.sequentialDownload;
+        firstLastPiecePriority = torrent.firstLastPiecePriority;
+    }
+
     @Ignore
     public Torrent(Parcel source)
     {
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.data.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.Embedded;
+
+/*
+ * Row of the TorrentTagInfo and TagInfo join, not an entity.
+ */
+
+public class TorrentTagJoin {
+    @NonNull
+    public final String torrentId;
+
+    @NonNull
+    @Embedded
+    public final TagInfo tag;
+
+    public TorrentTagJoin(@NonNull String torrentId, @NonNull TagInfo tag) {
+        this.torrentId = torrentId;
+        this.tag = tag;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "TorrentTagJoin{" +
+                "torrentId='" + torrentId + '\'' +
+                ", tag=" + tag +
+                '}';
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.proninyaroslav.libretorrent.core.model.TorrentEngineListener;
+import org.proninyaroslav.libretorrent.core.model.data.TorrentStateCode;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Delivers engine events to the listeners outside of the alert thread.
+ * Each listener has its own queue, so a slow listener doesn't delay
+ * the others and the alert processing. Events with the same key,
+ * not yet delivered to the listener, are replaced by the latest one,
+ * which takes its place at the end of the queue. Only events that carry
+ * the full current state (e.g. stats) should have a key. State changes
+ * of a torrent are merged in the same way, from the earliest previous state
+ * to the latest state. The queue size is limited, if a listener is so far
+ * behind, new events are dropped.
+ */
+
+class EngineEventBus
+{
+    private static final String TAG = EngineEventBus.class.getSimpleName();
+
+    private static final int DEFAULT_MAX_QUEUE_SIZE = 10000;
+    private static final String STATE_CHANGED_EVENT_KEY = "state_changed:";
+
+    interface CallListener
+    {
+        void apply(TorrentEngineListener listener);
+    }
+
+    private final ConcurrentHashMap<TorrentEngineListener, Subscriber> subscribers =
+            new ConcurrentHashMap<>();
+    private final ExecutorService exec = Executors.newCachedThreadPool();
+    private final int maxQueueSize;
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    EngineEventBus()
+    {
+        this(DEFAULT_MAX_QUEUE_SIZE);
+    }
+
+    EngineEventBus(int maxQueueSize)
+    {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    void addListener(@NonNull TorrentEngineListener listener)
+    {
+        subscribers.putIfAbsent(listener, new Subscriber(listener, false));
+    }
+
+    /*
+     * Events are delivered to the listener in the calling thread
+     */
+
+    void addSyncListener(@NonNull TorrentEngineListener listener)
+    {
+        subscribers.putIfAbsent(listener, new Subscriber(listener, true));
+    }
+
+    void removeListener(@NonNull TorrentEngineListener listener)
+    {
+        Subscriber subscriber = subscribers.remove(listener);
+        if (subscriber != null)
+            subscriber.clear();
+    }
+
+    void post(@NonNull CallListener call)
+    {
+        post(null, call);
+    }
+
+    void post(@Nullable String key, @NonNull CallListener call)
+    {
+        post(new Event(key, call));
+    }
+
+    void postStateChanged(@NonNull String id,
+                          @NonNull TorrentStateCode prevState,
+                          @NonNull TorrentStateCode curState)
+    {
+        post(new StateChangedEvent(id, prevState, curState));
+    }
+
+    private void post(Event event)
+    {
+        for (Subscriber subscriber : subscribers.values())
+            subscriber.post(event);
+    }
+
+    /*
+     * Returns the number of events waiting for delivery, for each listener
+     */
+
+    @NonNull
+    Map<TorrentEngineListener, Integer> getQueueDepth()
+    {
+        HashMap<TorrentEngineListener, Integer> depth = new HashMap<>();
+        for (Subscriber subscriber : subscribers.values())
+            depth.put(subscriber.listener, subscriber.size());
+
+        return depth;
+    }
+
+    /*
+     * Returns the number of events that were dropped because of full queues
+     */
+
+    long getDroppedEvents()
+    {
+        return droppedEvents.get();
+    }
+
+    /*
+     * Compared by identity, the same event can be queued for each listener
+     */
+
+    private static class Event
+    {
+        final String key;
+        final CallListener call;
+
+        Event(String key, CallListener call)
+        {
+            this.key = key;
+            this.call = call;
+        }
+
+        /*
+         * Returns the event that replaces the pending one
+         * with the same key, or null if both must be delivered
+         */
+
+        Event coalesce(Event pending)
+        {
+            return this;
+        }
+    }
+
+    private static final class StateChangedEvent extends Event
+    {
+        final String id;
+        final TorrentStateCode prevState;
+        final TorrentStateCode curState;
+
+        StateChangedEvent(String id, TorrentStateCode prevState, TorrentStateCode curState)
+        {
+            super(STATE_CHANGED_EVENT_KEY + id,
+                    (listener) -> listener.onTorrentStateChanged(id, prevState, curState));
+            this.id = id;
+            this.prevState = prevState;
+            this.curState = curState;
+        }
+
+        @Override
+        Event coalesce(Event pending)
+        {
+            TorrentStateCode skippedState = ((StateChangedEvent)pending).curState;
+            /* Listeners track the transitions through these states (e.g. to update pieces) */
+            if (skippedState == TorrentStateCode.CHECKING || skippedState == TorrentStateCode.DOWNLOADING)
+                return null;
+
+            return new StateChangedEvent(id, ((StateChangedEvent)pending).prevState, curState);
+        }
+    }
+
+    private final class Subscriber implements Runnable
+    {
+        final TorrentEngineListener listener;
+        final boolean sync;
+        /* Guarded by this */
+        private final LinkedHashSet<Event> queue = new LinkedHashSet<>();
+        /* The last queued event with the key */
+        private final HashMap<String, Event> pendingByKey = new HashMap<>();
+        private boolean scheduled;
+
+        Subscriber(TorrentEngineListener listener, boolean sync)
+        {
+            this.listener = listener;
+            this.sync = sync;
+        }
+
+        void post(Event event)
+        {
+            if (sync) {
+                deliver(event.call);
+                return;
+            }
+
+            synchronized (this) {
+                Event pending = event.key == null ? null : pendingByKey.get(event.key);
+                Event coalesced = pending == null ? null : event.coalesce(pending);
+                if (coalesced != null) {
+                    /* Keep the order relative to the other events */
+                    queue.remove(pending);
+                    event = coalesced;
+                } else if (queue.size() >= maxQueueSize) {
+                    droppedEvents.incrementAndGet();
+                    return;
+                }
+                if (event.key != null)
+                    pendingByKey.put(event.key, event);
+                queue.add(event);
+                if (scheduled)
+                    return;
+                scheduled = true;
+            }
+            exec.execute(this);
+        }
+
+        @Override
+        public void run()
+        {
+            while (true) {
+                CallListener call;
+                synchronized (this) {
+                    Iterator<Event> it = queue.iterator();
+                    if (!it.hasNext()) {
+                        scheduled = false;
+                        return;
+                    }
+                    Event event = it.next();
+                    it.remove();
+                    if (event.key != null && pendingByKey.get(event.key) == event)
+                        pendingByKey.remove(event.key);
+                    call = event.call;
+                }
+                deliver(call);
+            }
+        }
+
+        void deliver(CallListener call)
+        {
+            try {
+                call.apply(listener);
+
+            } catch (Exception e) {
+                Log.e(TAG, "Error in listener " + listener + ": " +
+                        Log.getStackTraceString(e));
+            }
+        }
+
+        synchronized int size()
+        {
+            return queue.size();
+        }
+
+        synchronized void clear()
+        {
+            queue.clear();
+            pendingByKey.clear();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import androidx.annotation.NonNull;
+
+import org.proninyaroslav.libretorrent.core.model.data.ReadPieceInfo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Futures of the torrent pieces, waiting for the piece to be finished or read.
+ * Only waiters of the specific piece are completed by the alert.
+ * A cancelled future is removed from the registry.
+ */
+
+public class PieceWaiters
+{
+    public interface ReadPieceCallback
+    {
+        /*
+         * Called in the alert thread before the future is completed,
+         * the piece buffer is only valid during the call
+         */
+
+        void onRead(@NonNull ReadPieceInfo info);
+    }
+
+    /*
+     * Either cancelled or claimed by the alert thread to run the callback.
+     * Cancel fails once the callback is claimed, so the callback
+     * never runs after a successful cancel
+     */
+
+    private static final class ReadFuture extends CompletableFuture<Void>
+    {
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        boolean claim()
+        {
+            return claimed.compareAndSet(false, true);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            if (!claim())
+                return isCancelled();
+
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    private static final class ReadWaiter
+    {
+        final ReadFuture future;
+        final ReadPieceCallback callback;
+
+        ReadWaiter(ReadFuture future, ReadPieceCallback callback)
+        {
+            this.future = future;
+            this.callback = callback;
+        }
+    }
+
+    /* Guarded by this */
+    private final HashMap<Integer, ArrayList<CompletableFuture<Void>>> finishWaiters = new HashMap<>();
+    private final HashMap<Integer, ArrayList<ReadWaiter>> readWaiters = new HashMap<>();
+
+    @NonNull
+    CompletableFuture<Void> awaitFinished(int piece)
+    {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (this) {
+            ArrayList<CompletableFuture<Void>> waiters = finishWaiters.get(piece);
+            if (waiters == null) {
+                waiters = new ArrayList<>(1);
+                finishWaiters.put(piece, waiters);
+            }
+            waiters.add(future);
+        }
+        future.whenComplete((v, e) -> removeFinishWaiter(piece, future));
+
+        return future;
+    }
+
+    @NonNull
+    CompletableFuture<Void> awaitRead(int piece, @NonNull ReadPieceCallback callback)
+    {
+        ReadFuture future = new ReadFuture();
+        ReadWaiter waiter = new ReadWaiter(future, callback);
+        synchronized (this) {
+            ArrayList<ReadWaiter> waiters = readWaiters.get(piece);
+            if (waiters == null) {
+                waiters = new ArrayList<>(1);
+                readWaiters.put(piece, waiters);
+            }
+            waiters.add(waiter);
+        }
+        future.whenComplete((v, e) -> removeReadWaiter(piece, waiter));
+
+        return future;
+    }
+
+    void pieceFinished(int piece)
+    {
+        ArrayList<CompletableFuture<Void>> waiters;
+        synchronized (this) {
+            waiters = finishWaiters.remove(piece);
+        }
+        if (waiters == null)
+            return;
+
+        for (CompletableFuture<Void> future : waiters)
+            future.complete(null);
+    }
+
+    /*
+     * Must be called in the alert thread
+     */
+
+    void pieceRead(@NonNull ReadPieceInfo info)
+    {
+        ArrayList<ReadWaiter> waiters;
+        synchronized (this) {
+            waiters = readWaiters.remove(info.piece);
+        }
+        if (waiters == null)
+            return;
+
+        for (ReadWaiter waiter : waiters) {
+            if (!waiter.future.claim())
+                continue;
+            if (info.err != null) {
+                waiter.future.completeExceptionally(info.err);
+                continue;
+            }
+
+            try {
+                waiter.callback.onRead(info);
+                waiter.future.complete(null);
+
+            } catch (Exception e) {
+                waiter.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    void cancelAll()
+    {
+        ArrayList<CompletableFuture<Void>> futures = new ArrayList<>();
+        synchronized (this) {
+            for (ArrayList<CompletableFuture<Void>> waiters : finishWaiters.values())
+                futures.addAll(waiters);
+            for (ArrayList<ReadWaiter> waiters : readWaiters.values()) {
+                for (ReadWaiter waiter : waiters)
+                    futures.add(waiter.future);
+            }
+            finishWaiters.clear();
+            readWaiters.clear();
+        }
+
+        for (CompletableFuture<Void> future : futures)
+            future.cancel(false);
+    }
+
+    synchronized int size()
+    {
+        int size = 0;
+        for (ArrayList<CompletableFuture<Void>> waiters : finishWaiters.values())
+            size += waiters.size();
+        for (ArrayList<ReadWaiter> waiters : readWaiters.values())
+            size += waiters.size();
+
+        return size;
+    }
+
+    private synchronized void removeFinishWaiter(int piece, CompletableFuture<Void> future)
+    {
+        ArrayList<CompletableFuture<Void>> waiters = finishWaiters.get(piece);
+        if (waiters == null)
+            return;
+
+        waiters.remove(future);
+        if (waiters.isEmpty())
+            finishWaiters.remove(piece);
+    }
+
+    private synchronized void removeReadWaiter(int piece, ReadWaiter waiter)
+    {
+        ArrayList<ReadWaiter> waiters = readWaiters.get(piece);
+        if (waiters == null)
+            return;
+
+        waiters.remove(waiter);
+        if (waiters.isEmpty())
+            readWaiters.remove(piece);
+    }
+}
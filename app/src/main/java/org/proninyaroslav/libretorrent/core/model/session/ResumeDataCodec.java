@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+ * Encoding of the stored fast resume data. Bencoded data always starts
+ * with 'd' (dictionary), so it's stored as is; otherwise the first byte
+ * is the encoding version:
+ *
+ * DEFLATE: version, original length (int), raw deflate stream.
+ *
+ * Data is compressed only if it saves enough space, otherwise
+ * it isn't worth the CPU time on restore.
+ */
+
+class ResumeDataCodec
+{
+    static final byte RAW = 'd';
+    static final byte DEFLATE = 1;
+    private static final int DEFLATE_HEADER_SIZE = 5;
+    /* Compressed data larger than this part of the original isn't kept */
+    static final double MAX_COMPRESSION_RATIO = 0.9;
+    /* Too small to compress */
+    static final int MIN_COMPRESS_SIZE = 256;
+    private static final int BUFFER_SIZE = 8192;
+    /* Max ratio of the deflate format, a larger length is corrupted */
+    private static final int MAX_INFLATE_RATIO = 1032;
+
+    private ResumeDataCodec()
+    {
+    }
+
+    @NonNull
+    static byte[] encode(@NonNull byte[] data)
+    {
+        if (data.length < MIN_COMPRESS_SIZE)
+            return data;
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + DEFLATE_HEADER_SIZE);
+        try {
+            out.write(DEFLATE);
+            out.write(ByteBuffer.allocate(4).putInt(data.length).array(), 0, 4);
+
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buf = new byte[BUFFER_SIZE];
+            long maxSize = (long)(data.length * MAX_COMPRESSION_RATIO);
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+                /* Not worth it, stop early */
+                if (out.size() > maxSize)
+                    return data;
+            }
+
+        } finally {
+            deflater.end();
+        }
+
+        return out.toByteArray();
+    }
+
+    @NonNull
+    static byte[] decode(@NonNull byte[] data)
+    {
+        if (data.length == 0 || data[0] == RAW)
+            return data;
+        if (data[0] != DEFLATE)
+            throw new IllegalArgumentException("Unknown resume data encoding: " + data[0]);
+        if (data.length < DEFLATE_HEADER_SIZE)
+            throw new IllegalArgumentException("Resume data is truncated");
+
+        int length = ByteBuffer.wrap(data, 1, 4).getInt();
+        if (length < 0 || length > (long)(data.length - DEFLATE_HEADER_SIZE) * MAX_INFLATE_RATIO)
+            throw new IllegalArgumentException("Invalid resume data length: " + length);
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data, DEFLATE_HEADER_SIZE, data.length - DEFLATE_HEADER_SIZE);
+            byte[] decoded = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                int n = inflater.inflate(decoded, offset, length - offset);
+                if (n == 0 && (inflater.finished() || inflater.needsInput()))
+                    break;
+                offset += n;
+            }
+            if (offset != length)
+                throw new IllegalArgumentException("Resume data is truncated");
+
+            return decoded;
+
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Unable to decompress resume data", e);
+
+        } finally {
+            inflater.end();
+        }
+    }
+}
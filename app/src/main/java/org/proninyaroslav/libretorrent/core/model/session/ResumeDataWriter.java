@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import androidx.annotation.NonNull;
+
+import org.proninyaroslav.libretorrent.core.model.data.entity.FastResume;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Write-behind queue of fast resume data. Only the latest data of each torrent
+ * is kept, the queue is written to the storage in a single transaction
+ * after the flush interval or when the queue reaches the max size.
+ * The returned future is completed when the torrent data is written
+ * (or removed from the queue), so that it can be used as a critical work.
+ * The data is encoded with ResumeDataCodec when it's written, not in the caller
+ * (e.g. the alert thread).
+ */
+
+class ResumeDataWriter
+{
+    static final long DEFAULT_FLUSH_INTERVAL = 5000; /* ms */
+    static final int DEFAULT_MAX_PENDING = 64;
+
+    interface Storage
+    {
+        void write(@NonNull List<FastResume> batch) throws Exception;
+    }
+
+    private static final class Pending
+    {
+        FastResume fastResume;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Pending(FastResume fastResume)
+        {
+            this.fastResume = fastResume;
+        }
+    }
+
+    private final Storage storage;
+    private final long flushInterval;
+    private final int maxPending;
+    private final ScheduledExecutorService exec;
+    /* Guarded by this */
+    private final LinkedHashMap<String, Pending> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> flushTask;
+    private boolean flushRequested;
+    /* Batches must be written in order, otherwise older data may overwrite newer */
+    private final Object flushLock = new Object();
+
+    ResumeDataWriter(@NonNull Storage storage, long flushInterval, int maxPending)
+    {
+        if (flushInterval <= 0)
+            throw new IllegalArgumentException("Flush interval must be greater than 0");
+        if (maxPending <= 0)
+            throw new IllegalArgumentException("Max pending must be greater than 0");
+
+        this.storage = storage;
+        this.flushInterval = flushInterval;
+        this.maxPending = maxPending;
+        exec = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setName("ResumeDataWriter");
+            return t;
+        });
+    }
+
+    /*
+     * Replaces the queued data of the torrent, if any
+     */
+
+    @NonNull
+    CompletableFuture<Void> write(@NonNull FastResume fastResume)
+    {
+        synchronized (this) {
+            Pending p = pending.get(fastResume.torrentId);
+            if (p == null) {
+                p = new Pending(fastResume);
+                pending.put(fastResume.torrentId, p);
+            } else {
+                p.fastResume = fastResume;
+            }
+
+            if (pending.size() >= maxPending)
+                requestFlush();
+            else if (flushTask == null && !flushRequested)
+                flushTask = exec.schedule(this::flush, flushInterval, TimeUnit.MILLISECONDS);
+
+            return p.future;
+        }
+    }
+
+    /*
+     * Drops the queued data of the removed torrent
+     */
+
+    void remove(@NonNull String torrentId)
+    {
+        Pending p;
+        synchronized (this) {
+            p = pending.remove(torrentId);
+        }
+        if (p != null)
+            p.future.complete(null);
+    }
+
+    /*
+     * Writes the queue in the background without waiting for the interval
+     */
+
+    synchronized void flushAsync()
+    {
+        if (!pending.isEmpty())
+            requestFlush();
+    }
+
+    /*
+     * Writes the queue in the calling thread
+     */
+
+    void flush()
+    {
+        synchronized (flushLock) {
+            ArrayList<Pending> batch;
+            synchronized (this) {
+                flushRequested = false;
+                if (flushTask != null) {
+                    flushTask.cancel(false);
+                    flushTask = null;
+                }
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+            if (batch.isEmpty())
+                return;
+
+            ArrayList<FastResume> data = new ArrayList<>(batch.size());
+            for (Pending p : batch)
+                data.add(new FastResume(p.fastResume.torrentId,
+                                        ResumeDataCodec.encode(p.fastResume.data)));
+            try {
+                storage.write(data);
+
+            } catch (Exception e) {
+                /*
+                 * A single bad row (e.g. the torrent has just been deleted)
+                 * shouldn't cause the loss of the entire batch
+                 */
+                writeSeparately(batch, data);
+                return;
+            }
+            for (Pending p : batch)
+                p.future.complete(null);
+        }
+    }
+
+    synchronized int size()
+    {
+        return pending.size();
+    }
+
+    private void writeSeparately(List<Pending> batch, List<FastResume> data)
+    {
+        for (int i = 0; i < batch.size(); i++) {
+            Pending p = batch.get(i);
+            try {
+                storage.write(Collections.singletonList(data.get(i)));
+                p.future.complete(null);
+
+            } catch (Exception e) {
+                p.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /* Must be called with the lock held */
+    private void requestFlush()
+    {
+        if (flushRequested)
+            return;
+
+        flushRequested = true;
+        exec.execute(this::flush);
+    }
+}
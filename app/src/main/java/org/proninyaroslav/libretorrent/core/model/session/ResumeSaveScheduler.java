@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/*
+ * Decides when torrents save their periodic resume data, for the whole session.
+ * Torrents are marked as dirty when their state changes; the session
+ * polls the scheduler once per tick and saves the returned torrents.
+ * The number of saves is limited by a global budget, so that many torrents
+ * don't save at the same time. Torrents are saved in the order of marking,
+ * but not more often than the min interval. Forced saves (e.g. paused
+ * or moved) don't wait for the scheduler and are only reported to it.
+ */
+
+class ResumeSaveScheduler
+{
+    static final int DEFAULT_SAVES_PER_SECOND = 5;
+    /* Max saves that can be accumulated by idle ticks */
+    static final int DEFAULT_MAX_BURST = 10;
+    /* Min time between periodic saves of the same torrent */
+    static final long DEFAULT_MIN_SAVE_INTERVAL = 10000; /* ms */
+
+    private final double savesPerSecond;
+    private final int maxBurst;
+    private final long minSaveInterval;
+    /* Guarded by this */
+    private final LinkedHashSet<String> dirty = new LinkedHashSet<>();
+    private final HashMap<String, Long> lastSaveTime = new HashMap<>();
+    private double budget;
+    private long lastRefillTime = -1;
+
+    ResumeSaveScheduler(int savesPerSecond, int maxBurst, long minSaveInterval)
+    {
+        if (savesPerSecond <= 0)
+            throw new IllegalArgumentException("Saves per second must be greater than 0");
+        if (maxBurst < savesPerSecond)
+            throw new IllegalArgumentException("Max burst must be at least saves per second");
+
+        this.savesPerSecond = savesPerSecond;
+        this.maxBurst = maxBurst;
+        this.minSaveInterval = minSaveInterval;
+        budget = maxBurst;
+    }
+
+    synchronized void markDirty(@NonNull String torrentId)
+    {
+        /* Keep the position, if already marked */
+        dirty.add(torrentId);
+    }
+
+    /*
+     * The torrent is saved outside of the scheduler, e.g. forced save
+     */
+
+    synchronized void onSaved(@NonNull String torrentId, long now)
+    {
+        dirty.remove(torrentId);
+        lastSaveTime.put(torrentId, now);
+    }
+
+    /*
+     * Returns true if the torrent was dirty
+     */
+
+    synchronized boolean remove(@NonNull String torrentId)
+    {
+        lastSaveTime.remove(torrentId);
+
+        return dirty.remove(torrentId);
+    }
+
+    /*
+     * Returns the torrents that must be saved now
+     */
+
+    @NonNull
+    synchronized List<String> poll(long now)
+    {
+        refill(now);
+
+        ArrayList<String> toSave = new ArrayList<>();
+        Iterator<String> it = dirty.iterator();
+        while (budget >= 1 && it.hasNext()) {
+            String id = it.next();
+            Long lastSave = lastSaveTime.get(id);
+            if (lastSave != null && now - lastSave < minSaveInterval)
+                continue;
+            toSave.add(id);
+            it.remove();
+            budget--;
+        }
+        for (String id : toSave)
+            lastSaveTime.put(id, now);
+
+        return toSave;
+    }
+
+    /*
+     * Returns all dirty torrents regardless of the budget and interval,
+     * e.g. before stop
+     */
+
+    @NonNull
+    synchronized List<String> drain()
+    {
+        ArrayList<String> toSave = new ArrayList<>(dirty);
+        dirty.clear();
+
+        return toSave;
+    }
+
+    synchronized boolean isDirty(@NonNull String torrentId)
+    {
+        return dirty.contains(torrentId);
+    }
+
+    synchronized int size()
+    {
+        return dirty.size();
+    }
+
+    private void refill(long now)
+    {
+        if (lastRefillTime >= 0 && now > lastRefillTime)
+            budget = Math.min(maxBurst,
+                    budget + (now - lastRefillTime) * savesPerSecond / 1000);
+        lastRefillTime = now;
+    }
+}
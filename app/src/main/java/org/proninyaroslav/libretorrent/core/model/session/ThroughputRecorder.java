@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import androidx.annotation.NonNull;
+
+import org.proninyaroslav.libretorrent.core.collections.IntTimeSeries;
+import org.proninyaroslav.libretorrent.core.model.data.SessionStats;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Records session and per-torrent rates on every session tick (about once per second).
+ * The last minute is stored per sample, the last hour per minute,
+ * so the memory for each torrent is fixed.
+ */
+
+public class ThroughputRecorder
+{
+    private static final int SAMPLES_PER_PERIOD = 60; /* 1 minute */
+    private static final int PERIODS = 60; /* 1 hour */
+
+    public enum Metric
+    {
+        DOWNLOAD_RATE,
+        UPLOAD_RATE,
+        PEERS,
+        DHT_NODES
+    }
+
+    public enum Window
+    {
+        MINUTE(60),
+        TEN_MINUTES(600),
+        HOUR(3600);
+
+        private final int samples;
+
+        Window(int samples)
+        {
+            this.samples = samples;
+        }
+    }
+
+    private static final class Series
+    {
+        final IntTimeSeries downloadRate = new IntTimeSeries(SAMPLES_PER_PERIOD, PERIODS);
+        final IntTimeSeries uploadRate = new IntTimeSeries(SAMPLES_PER_PERIOD, PERIODS);
+        final IntTimeSeries peers = new IntTimeSeries(SAMPLES_PER_PERIOD, PERIODS);
+        /* Session only */
+        IntTimeSeries dhtNodes;
+
+        IntTimeSeries get(Metric metric)
+        {
+            switch (metric) {
+                case DOWNLOAD_RATE:
+                    return downloadRate;
+                case UPLOAD_RATE:
+                    return uploadRate;
+                case PEERS:
+                    return peers;
+                case DHT_NODES:
+                    return dhtNodes;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private final Series session = new Series();
+    private final ConcurrentHashMap<String, Series> torrents = new ConcurrentHashMap<>();
+
+    ThroughputRecorder()
+    {
+        session.dhtNodes = new IntTimeSeries(SAMPLES_PER_PERIOD, PERIODS);
+    }
+
+    void sample(@NonNull SessionStats stats, @NonNull Iterable<TorrentDownloadImpl> tasks)
+    {
+        int sessionPeers = 0;
+        for (TorrentDownloadImpl task : tasks) {
+            TorrentStatusSnapshot status = task.getStatusSnapshot();
+            if (status == null)
+                continue;
+
+            Series series = torrents.get(task.getTorrentId());
+            if (series == null) {
+                series = new Series();
+                torrents.put(task.getTorrentId(), series);
+            }
+            series.downloadRate.add(toInt(status.downloadSpeed));
+            series.uploadRate.add(toInt(status.uploadSpeed));
+            series.peers.add(status.connectedPeers);
+            sessionPeers += status.connectedPeers;
+        }
+
+        session.downloadRate.add(toInt(stats.downloadSpeed));
+        session.uploadRate.add(toInt(stats.uploadSpeed));
+        session.peers.add(sessionPeers);
+        session.dhtNodes.add(toInt(stats.dhtNodes));
+    }
+
+    void removeTorrent(@NonNull String id)
+    {
+        torrents.remove(id);
+    }
+
+    void clear()
+    {
+        torrents.clear();
+        session.downloadRate.clear();
+        session.uploadRate.clear();
+        session.peers.clear();
+        session.dhtNodes.clear();
+    }
+
+    /*
+     * Returns false if there are no samples for the window
+     */
+
+    public boolean getSessionStats(@NonNull Metric metric,
+                                   @NonNull Window window,
+                                   @NonNull IntTimeSeries.Stats out)
+    {
+        return session.get(metric).stats(window.samples, out);
+    }
+
+    /*
+     * Returns false if there are no samples for the window or
+     * the metric isn't recorded for torrents
+     */
+
+    public boolean getTorrentStats(@NonNull String id,
+                                   @NonNull Metric metric,
+                                   @NonNull Window window,
+                                   @NonNull IntTimeSeries.Stats out)
+    {
+        Series series = torrents.get(id);
+        if (series == null)
+            return false;
+        IntTimeSeries s = series.get(metric);
+
+        return s != null && s.stats(window.samples, out);
+    }
+
+    private static int toInt(long value)
+    {
+        return (int)Math.min(value, Integer.MAX_VALUE);
+    }
+}
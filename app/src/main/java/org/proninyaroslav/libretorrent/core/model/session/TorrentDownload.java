@@ -22,6 +22,7 @@ package org.proninyaroslav.libretorrent.core.model.session;
 import android.net.Uri;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.proninyaroslav.libretorrent.core.exception.DecodeException;
 import org.proninyaroslav.libretorrent.core.model.data.PeerInfo;
@@ -31,8 +32,10 @@ import org.proninyaroslav.libretorrent.core.model.data.TrackerInfo;
 import org.proninyaroslav.libretorrent.core.model.data.metainfo.TorrentMetaInfo;
 import org.proninyaroslav.libretorrent.core.model.stream.TorrentStream;
 
+import java.io.File;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import io.reactivex.Completable;
 
@@ -151,6 +154,13 @@ public interface TorrentDownload
 
     TorrentStateCode getStateCode();
 
+    /*
+     * Returns the status taken on the last session tick,
+     * or null if the torrent isn't valid
+     */
+
+    TorrentStatusSnapshot getStatusSnapshot();
+
     boolean isPaused();
 
     boolean isSeeding();
@@ -177,12 +187,36 @@ public interface TorrentDownload
 
     boolean havePiece(int pieceIndex);
 
-    void readPiece(int pieceIndex);
+    /*
+     * Completed when the piece is downloaded and verified
+     */
+
+    @NonNull
+    CompletableFuture<Void> waitForPiece(int pieceIndex);
+
+    /*
+     * Requests reading of the piece. The future fails if the piece can't be read
+     */
+
+    @NonNull
+    CompletableFuture<Void> readPiece(int pieceIndex, @NonNull PieceWaiters.ReadPieceCallback callback);
+
+    /*
+     * Prioritizes pieces of the stream starting from startPiece,
+     * with the given deadline (in ms) for each of them
+     */
 
-    void setInterestedPieces(@NonNull TorrentStream stream, int startPiece, int numPieces);
+    void setPiecesDeadlines(@NonNull TorrentStream stream, int startPiece, @NonNull int[] deadlines);
 
     TorrentStream getStream(int fileIndex);
 
+    /*
+     * Returns the file in the save path, or null if there is no metadata
+     */
+
+    @Nullable
+    File getFile(int fileIndex);
+
     boolean isValid();
 
     boolean isStopped();
@@ -29,7 +29,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 import androidx.core.util.Pair;
 
-import org.libtorrent4j.AlertListener;
 import org.libtorrent4j.AnnounceEntry;
 import org.libtorrent4j.ErrorCode;
 import org.libtorrent4j.FileStorage;
@@ -52,18 +51,17 @@ import org.libtorrent4j.alerts.PieceFinishedAlert;
 import org.libtorrent4j.alerts.ReadPieceAlert;
 import org.libtorrent4j.alerts.SaveResumeDataAlert;
 import org.libtorrent4j.alerts.StateChangedAlert;
-import org.libtorrent4j.alerts.TorrentAlert;
 import org.libtorrent4j.alerts.TorrentErrorAlert;
 import org.libtorrent4j.swig.announce_entry;
 import org.libtorrent4j.swig.byte_vector;
 import org.libtorrent4j.swig.libtorrent;
 import org.libtorrent4j.swig.libtorrent_errors;
 import org.libtorrent4j.swig.peer_info_vector;
+import org.libtorrent4j.swig.resume_data_flags_t;
 import org.libtorrent4j.swig.torrent_handle;
 import org.proninyaroslav.libretorrent.core.exception.DecodeException;
 import org.proninyaroslav.libretorrent.core.exception.FreeSpaceException;
 import org.proninyaroslav.libretorrent.core.exception.UnknownUriException;
-import org.proninyaroslav.libretorrent.core.model.TorrentEngineListener;
 import org.proninyaroslav.libretorrent.core.model.data.PeerInfo;
 import org.proninyaroslav.libretorrent.core.model.data.Priority;
 import org.proninyaroslav.libretorrent.core.model.data.ReadPieceInfo;
@@ -76,14 +74,17 @@ import org.proninyaroslav.libretorrent.core.model.stream.TorrentStream;
 import org.proninyaroslav.libretorrent.core.storage.TorrentRepository;
 import org.proninyaroslav.libretorrent.core.system.FileSystemFacade;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -99,14 +100,11 @@ class TorrentDownloadImpl implements TorrentDownload
 {
     private static final String TAG = TorrentDownload.class.getSimpleName();
 
-    private static final long SAVE_RESUME_SYNC_TIME = 10000; /* ms */
     private static final long CRITICAL_WORK_WAIT_TIMEOUT = 30000; /* ms */
-    private static final double MAX_RATIO = 9999.;
-    /* For streaming */
-    private final static int PRELOAD_PIECES_COUNT = 5;
-    private static final int DEFAULT_PIECE_DEADLINE = 1000; /* ms */
+    private static final String OWN_PIECES_KEY = "";
 
-    private static final int[] INNER_LISTENER_TYPES = new int[] {
+    /* Alerts routed to the torrent by the session */
+    static final int[] ALERT_TYPES = new int[] {
             AlertType.STATE_CHANGED.swig(),
             AlertType.TORRENT_FINISHED.swig(),
             AlertType.TORRENT_REMOVED.swig(),
@@ -129,13 +127,14 @@ class TorrentDownloadImpl implements TorrentDownload
     private TorrentHandle th;
     private String id;
     private TorrentRepository repo;
+    private ResumeDataWriter resumeDataWriter;
+    private ResumeSaveScheduler saveScheduler;
     private FileSystemFacade fs;
-    private Queue<TorrentEngineListener> listeners;
-    private InnerListener listener;
+    private EngineEventBus eventBus;
     private Uri partsFile;
-    private long lastSaveResumeTime;
     private AtomicReference<String> name;
     private TorrentCriticalWork criticalWork = new TorrentCriticalWork();
+    private PieceWaiters pieceWaiters = new PieceWaiters();
     private boolean autoManaged;
     private boolean stopRequested = false;
     private boolean stopped = false;
@@ -143,26 +142,33 @@ class TorrentDownloadImpl implements TorrentDownload
     private boolean resumeDataRejected;
     private boolean hasMissingFiles;
     private boolean hasFirstLastPiecePriority;
+    private boolean infoDictStored;
+    /* Last status, updated by the session once per tick */
+    private volatile TorrentStatusSnapshot statusSnapshot;
+    /* Java copies of our own and peers bitfields, guarded by itself */
+    private final HashMap<String, PiecesCopy> piecesCopies = new HashMap<>();
 
     public TorrentDownloadImpl(SessionManager sessionManager,
                                TorrentRepository repo,
+                               ResumeDataWriter resumeDataWriter,
+                               ResumeSaveScheduler saveScheduler,
                                FileSystemFacade fs,
-                               final Queue<TorrentEngineListener> listeners,
+                               EngineEventBus eventBus,
                                String id,
                                TorrentHandle handle,
                                boolean autoManaged)
     {
         this.id = id;
         this.repo = repo;
+        this.resumeDataWriter = resumeDataWriter;
+        this.saveScheduler = saveScheduler;
         this.fs = fs;
         this.sessionManager = sessionManager;
         this.autoManaged = autoManaged;
-        this.listeners = listeners;
+        this.eventBus = eventBus;
         this.th = handle;
         this.name = new AtomicReference<>(handle.getName());
         partsFile = getPartsFile();
-        listener = new InnerListener();
-        sessionManager.addListener(listener);
 
         var torrent = repo.getTorrentById(id);
         if (torrent != null) {
@@ -178,17 +184,9 @@ class TorrentDownloadImpl implements TorrentDownload
             saveResumeData(true);
     }
 
-    private interface CallListener
+    private void notifyListeners(@NonNull EngineEventBus.CallListener l)
     {
-        void apply(TorrentEngineListener listener);
-    }
-
-    private void notifyListeners(@NonNull CallListener l)
-    {
-        for (TorrentEngineListener listener : listeners) {
-            if (listener != null)
-                l.apply(listener);
-        }
+        eventBus.post(l);
     }
 
     private boolean operationNotAllowed()
@@ -201,82 +199,76 @@ class TorrentDownloadImpl implements TorrentDownload
         return !operationNotAllowed() && ti != null && ti.numFiles() > 0;
     }
 
-    private final class InnerListener implements AlertListener
-    {
-        @Override
-        public int[] types()
-        {
-            return INNER_LISTENER_TYPES;
-        }
+    /*
+     * Called by the session for alerts of this torrent only
+     */
 
-        @Override
-        public void alert(Alert<?> alert)
-        {
-            if (!(alert instanceof TorrentAlert<?>))
-                return;
+    void handleAlert(Alert<?> alert)
+    {
+        if (stopped)
+            return;
 
-            if (!((TorrentAlert<?>) alert).handle().swig().eq(th.swig()))
-                return;
+        AlertType type = alert.type();
+        switch (type) {
+            case STATE_CHANGED:
+                statusSnapshot = null;
+                StateChangedAlert a = ((StateChangedAlert)alert);
+                TorrentStateCode prevState = stateToStateCode(a.getPrevState());
+                TorrentStateCode curState = stateToStateCode(a.getState());
+                eventBus.postStateChanged(id, prevState, curState);
+                break;
+            case TORRENT_FINISHED:
+                handleTorrentFinished();
+                break;
+            case TORRENT_REMOVED:
+                torrentRemoved();
+                break;
+            case TORRENT_PAUSED:
+                statusSnapshot = null;
+                notifyListeners((listener) ->
+                        listener.onTorrentPaused(id));
+                break;
+            case TORRENT_RESUMED:
+                statusSnapshot = null;
+                resetTorrentError();
 
-            AlertType type = alert.type();
-            switch (type) {
-                case STATE_CHANGED:
-                    StateChangedAlert a = ((StateChangedAlert)alert);
-                    notifyListeners((listener) ->
-                            listener.onTorrentStateChanged(id,
-                                    stateToStateCode(a.getPrevState()),
-                                    stateToStateCode(a.getState())));
-                    break;
-                case TORRENT_FINISHED:
-                    handleTorrentFinished();
-                    break;
-                case TORRENT_REMOVED:
-                    torrentRemoved();
-                    break;
-                case TORRENT_PAUSED:
-                    notifyListeners((listener) ->
-                            listener.onTorrentPaused(id));
-                    break;
-                case TORRENT_RESUMED:
-                    resetTorrentError();
-
-                    notifyListeners((listener) ->
-                            listener.onTorrentResumed(id));
-                    break;
-                case SAVE_RESUME_DATA:
-                    serializeResumeData((SaveResumeDataAlert)alert);
-                    break;
-                case STORAGE_MOVED:
-                    onStorageMoved(true);
-                    break;
-                case STORAGE_MOVED_FAILED:
-                    onStorageMoved(false);
-                    break;
-                case PIECE_FINISHED:
-                    saveResumeData(false);
-                    int piece = ((PieceFinishedAlert)alert).pieceIndex();
-                    notifyListeners((listener) ->
-                            listener.onPieceFinished(id, piece));
-                    break;
-                case METADATA_RECEIVED:
-                    handleMetadata((MetadataReceivedAlert)alert);
-                    // If first/last piece priority was specified when adding this torrent,
-                    // we should apply it now that we have metadata.
-                    if (hasFirstLastPiecePriority) {
-                        applyFirstLastPiecePriority(true);
-                    }
-                    saveResumeData(true);
-                    break;
-                case READ_PIECE:
-                    handleReadPiece((ReadPieceAlert)alert);
-                    break;
-                case TORRENT_CHECKED:
-                    handleTorrentChecked();
-                    break;
-                default:
-                    checkError(alert);
-                    break;
-            }
+                notifyListeners((listener) ->
+                        listener.onTorrentResumed(id));
+                break;
+            case SAVE_RESUME_DATA:
+                serializeResumeData((SaveResumeDataAlert)alert);
+                break;
+            case STORAGE_MOVED:
+                onStorageMoved(true);
+                break;
+            case STORAGE_MOVED_FAILED:
+                onStorageMoved(false);
+                break;
+            case PIECE_FINISHED:
+                int piece = ((PieceFinishedAlert)alert).pieceIndex();
+                pieceWaiters.pieceFinished(piece);
+                setOwnPiece(piece);
+                notifyListeners((listener) ->
+                        listener.onPieceFinished(id, piece));
+                break;
+            case METADATA_RECEIVED:
+                handleMetadata((MetadataReceivedAlert)alert);
+                // If first/last piece priority was specified when adding this torrent,
+                // we should apply it now that we have metadata.
+                if (hasFirstLastPiecePriority) {
+                    applyFirstLastPiecePriority(true);
+                }
+                saveResumeData(true);
+                break;
+            case READ_PIECE:
+                handleReadPiece((ReadPieceAlert)alert);
+                break;
+            case TORRENT_CHECKED:
+                handleTorrentChecked();
+                break;
+            default:
+                checkError(alert);
+                break;
         }
     }
 
@@ -448,8 +440,8 @@ class TorrentDownloadImpl implements TorrentDownload
                 alert.bufferPtr(),
                 err);
 
-        notifyListeners((listener) ->
-                listener.onReadPiece(id, info));
+        /* Buffer is only valid in the alert thread */
+        pieceWaiters.pieceRead(info);
     }
 
     private void torrentRemoved()
@@ -484,24 +476,39 @@ class TorrentDownloadImpl implements TorrentDownload
     }
 
     /*
-     * Generate fast-resume data for the torrent, see libtorrent documentation
+     * Schedule saving of the fast-resume data, the session saves it
+     * within the global budget, see ResumeSaveScheduler. Forced saves
+     * (e.g. pause or move) are started right away
      */
 
     @Override
     public void saveResumeData(boolean force)
     {
-        long now = System.currentTimeMillis();
+        if (force) {
+            saveScheduler.onSaved(id, System.currentTimeMillis());
+            saveResumeDataNow();
+        } else {
+            saveScheduler.markDirty(id);
+        }
+    }
 
-        if (force || (now - lastSaveResumeTime) >= SAVE_RESUME_SYNC_TIME)
-            lastSaveResumeTime = now;
-        else
-            /* Skip, too fast, see SAVE_RESUME_SYNC_TIME */
-            return;
+    boolean needSaveResumeData()
+    {
+        return !operationNotAllowed() && th.needSaveResumeData();
+    }
+
+    /*
+     * Generate fast-resume data for the torrent, see libtorrent documentation
+     */
 
+    void saveResumeDataNow()
+    {
         try {
             if (th.isValid()) {
                 criticalWork.setSaveResume(true);
-                th.saveResumeData(TorrentHandle.SAVE_INFO_DICT);
+                th.saveResumeData(storeInfoDict() ?
+                        new resume_data_flags_t() :
+                        TorrentHandle.SAVE_INFO_DICT);
             }
 
         } catch (Exception e) {
@@ -512,16 +519,55 @@ class TorrentDownloadImpl implements TorrentDownload
         }
     }
 
+    /*
+     * The info dictionary doesn't change, so it's stored once
+     * and the resume data contains only the mutable state.
+     * Returns false if it must be included in the resume data
+     */
+
+    private boolean storeInfoDict()
+    {
+        if (infoDictStored)
+            return true;
+
+        TorrentInfo ti = th.torrentFile();
+        if (ti == null || !ti.isValid())
+            return false;
+
+        try {
+            if (!repo.hasTorrentInfo(id))
+                repo.saveTorrentInfo(id, ti.bencode());
+            infoDictStored = true;
+
+        } catch (Exception e) {
+            Log.w(TAG, "Error saving info dictionary of " + id + ":");
+            Log.w(TAG, Log.getStackTraceString(e));
+        }
+
+        return infoDictStored;
+    }
+
+    /*
+     * The data is written to the database later by the writer,
+     * the save stays a critical work until then
+     */
+
     private void serializeResumeData(SaveResumeDataAlert alert)
     {
         try {
             byte_vector data = libtorrent.write_resume_data(alert.params().swig()).bencode();
-            repo.addFastResume(new FastResume(id, Vectors.byte_vector2bytes(data)));
+            /* Compressed by the writer */
+            resumeDataWriter.write(new FastResume(id, Vectors.byte_vector2bytes(data)))
+                    .whenComplete((v, e) -> {
+                        if (e != null)
+                            Log.e(TAG, Log.getStackTraceString(e));
+                        criticalWork.setSaveResume(false);
+                    });
+            if (stopRequested)
+                resumeDataWriter.flushAsync();
 
         } catch (Throwable e) {
             Log.e(TAG, Log.getStackTraceString(e));
-
-        } finally {
             criticalWork.setSaveResume(false);
         }
     }
@@ -539,6 +585,10 @@ class TorrentDownloadImpl implements TorrentDownload
             return stopEvent;
 
         stopRequested = true;
+        /* Don't leave the scheduled save, it becomes a critical work */
+        if (saveScheduler.remove(id))
+            saveResumeDataNow();
+        resumeDataWriter.flushAsync();
 
         /* Wait to complete critical works */
         stopEvent = Completable.create((emitter) -> {
@@ -583,10 +633,10 @@ class TorrentDownloadImpl implements TorrentDownload
         if (!stopRequested || stopped)
             return;
 
-        sessionManager.removeListener(listener);
         stopRequested = false;
         stopped = true;
         stopEvent = null;
+        pieceWaiters.cancelAll();
     }
 
     @Override
@@ -701,15 +751,7 @@ class TorrentDownloadImpl implements TorrentDownload
         if (ts == null)
             return 0;
 
-        float fp = ts.progress();
-        if (Float.compare(fp, 1f) == 0)
-            return 100;
-
-        int p = (int)(fp * 100);
-        if (p > 0)
-            return Math.min(p, 100);
-
-        return 0;
+        return TorrentStatusSnapshot.progressOf(ts);
     }
 
     @Override
@@ -771,6 +813,8 @@ class TorrentDownloadImpl implements TorrentDownload
     @Override
     public void remove(boolean withFiles)
     {
+        resumeDataWriter.remove(id);
+        saveScheduler.remove(id);
         Torrent torrent = repo.getTorrentById(id);
         if (torrent != null) {
             repo.deleteTorrent(torrent);
@@ -994,10 +1038,10 @@ class TorrentDownloadImpl implements TorrentDownload
         if (operationNotAllowed())
             return new boolean[0];
 
-        PieceIndexBitfield bitfield = th.status(TorrentHandle.QUERY_PIECES).pieces();
-        boolean[] pieces = new boolean[bitfield.size()];
-        for (int i = 0; i < bitfield.size(); i++)
-            pieces[i] = bitfield.getBit(i);
+        PiecesCopy copy = ownPieces(th.status(TorrentHandle.QUERY_PIECES).pieces());
+        boolean[] pieces = new boolean[copy.size];
+        for (int i = copy.bits.nextSetBit(0); i >= 0; i = copy.bits.nextSetBit(i + 1))
+            pieces[i] = true;
 
         return pieces;
     }
@@ -1171,15 +1215,7 @@ class TorrentDownloadImpl implements TorrentDownload
         if (getStateCode() != TorrentStateCode.DOWNLOADING)
             return MAX_ETA;
 
-        TorrentStatus status = th.status();
-        long left = status.totalWanted() - status.totalWantedDone();
-        long rate = status.downloadPayloadRate();
-        if (left <= 0)
-            return 0;
-        if (rate <= 0)
-            return MAX_ETA;
-
-        return Math.min(left / rate, MAX_ETA);
+        return TorrentStatusSnapshot.etaOf(th.status(), TorrentStateCode.DOWNLOADING);
     }
 
     @Override
@@ -1264,20 +1300,7 @@ class TorrentDownloadImpl implements TorrentDownload
         if (operationNotAllowed())
             return 0;
 
-        TorrentStatus ts = th.status();
-        long allTimeUpload = ts.allTimeUpload();
-        long allTimeDownload = ts.allTimeDownload();
-        long totalDone = ts.totalDone();
-        /*
-         * Special case for a seeder who lost its stats,
-         * also assume nobody will import a 99% done torrent
-         */
-        long downloaded = (allTimeDownload < totalDone * 0.01 ? totalDone : allTimeDownload);
-        if (downloaded == 0)
-            return (allTimeUpload == 0 ? 0.0 : MAX_RATIO);
-        double ratio = (double)allTimeUpload / (double)downloaded;
-
-        return Math.min(ratio, MAX_RATIO);
+        return TorrentStatusSnapshot.shareRatioOf(th.status());
     }
 
     @Override
@@ -1371,21 +1394,46 @@ class TorrentDownloadImpl implements TorrentDownload
 
     private TorrentStateCode stateToStateCode(TorrentStatus.State state)
     {
-        switch (state) {
-            case CHECKING_RESUME_DATA:
-            case CHECKING_FILES:
-                return TorrentStateCode.CHECKING;
-            case DOWNLOADING_METADATA:
-                return TorrentStateCode.DOWNLOADING_METADATA;
-            case DOWNLOADING:
-                return TorrentStateCode.DOWNLOADING;
-            case FINISHED:
-                return TorrentStateCode.FINISHED;
-            case SEEDING:
-                return TorrentStateCode.SEEDING;
-            default:
-                return TorrentStateCode.UNKNOWN;
+        return TorrentStatusSnapshot.stateToStateCode(state);
+    }
+
+    @Override
+    public TorrentStatusSnapshot getStatusSnapshot()
+    {
+        if (operationNotAllowed())
+            return null;
+
+        TorrentStatusSnapshot snapshot = statusSnapshot;
+        boolean sessionRunning = sessionManager.isRunning();
+        boolean sessionPaused = sessionManager.isPaused();
+        /*
+         * No updates from the session yet, or the state has been changed.
+         * Session pause/resume doesn't post updates for unchanged torrents
+         */
+        if (snapshot == null ||
+            snapshot.sessionRunning != sessionRunning ||
+            snapshot.sessionPaused != sessionPaused)
+        {
+            snapshot = new TorrentStatusSnapshot(th.status(true),
+                    sessionRunning, sessionPaused);
+            statusSnapshot = snapshot;
         }
+
+        return snapshot;
+    }
+
+    /*
+     * Called by the session with the batch of statuses from
+     * post_torrent_updates(), only for torrents changed since last tick
+     */
+
+    void updateStatus(@NonNull TorrentStatus status)
+    {
+        if (operationNotAllowed())
+            return;
+
+        statusSnapshot = new TorrentStatusSnapshot(status,
+                sessionManager.isRunning(), sessionManager.isPaused());
     }
 
     @Override
@@ -1397,7 +1445,7 @@ class TorrentDownloadImpl implements TorrentDownload
 
     private boolean isPaused(TorrentStatus s)
     {
-        return s.flags().and_(TorrentFlags.PAUSED).non_zero();
+        return TorrentStatusSnapshot.isPaused(s);
     }
 
     @Override
@@ -1497,15 +1545,18 @@ class TorrentDownloadImpl implements TorrentDownload
 
             return filesAvail;
         }
+        /* Number of available pieces before the piece with the index */
+        int[] availablePrefix = new int[piecesAvailability.length + 1];
+        for (int p = 0; p < piecesAvailability.length; p++)
+            availablePrefix[p + 1] = availablePrefix[p] + (piecesAvailability[p] > 0 ? 1 : 0);
+
         for (int i = 0; i < numFiles; i++) {
             Pair<Integer, Integer> filePieces = getFilePieces(ti, i);
-            if (filePieces == null) {
+            if (filePieces == null || filePieces.second >= piecesAvailability.length) {
                 filesAvail[i] = -1;
                 continue;
             }
-            int availablePieces = 0;
-            for (int p = filePieces.first; p <= filePieces.second; p++)
-                availablePieces += (piecesAvailability[p] > 0 ? 1 : 0);
+            int availablePieces = availablePrefix[filePieces.second + 1] - availablePrefix[filePieces.first];
             filesAvail[i] = (double)availablePieces / (filePieces.second - filePieces.first + 1);
         }
 
@@ -1518,22 +1569,125 @@ class TorrentDownloadImpl implements TorrentDownload
         if (operationNotAllowed())
             return new int[0];
 
-        PieceIndexBitfield pieces = th.status(TorrentHandle.QUERY_PIECES).pieces();
-        List<AdvancedPeerInfo> peers = advancedPeerInfo();
-        int[] avail = new int[pieces.size()];
-        for (int i = 0; i < pieces.size(); i++)
-            avail[i] = (pieces.getBit(i) ? 1 : 0);
+        PiecesCopy pieces = ownPieces(th.status(TorrentHandle.QUERY_PIECES).pieces());
+        int numPieces = pieces.size;
+        /*
+         * Peers availability in one native call. It isn't
+         * tracked when we're seeding, so count it from the peers list
+         */
+        int[] avail = th.pieceAvailability();
+        if (avail == null || avail.length != numPieces)
+            avail = peersPiecesAvailability(numPieces);
 
-        for (AdvancedPeerInfo peer : peers) {
-            PieceIndexBitfield peerPieces = peer.pieces();
-            for (int i = 0; i < pieces.size(); i++)
-                if (peerPieces.getBit(i))
-                    ++avail[i];
+        /* Plus our own pieces */
+        addBitfield(avail, pieces);
+
+        return avail;
+    }
+
+    private int[] peersPiecesAvailability(int numPieces)
+    {
+        int[] avail = new int[numPieces];
+        int seeds = 0;
+        synchronized (piecesCopies) {
+            /* Forget the disconnected peers */
+            HashMap<String, PiecesCopy> prevCopies = new HashMap<>(piecesCopies);
+            piecesCopies.clear();
+            PiecesCopy own = prevCopies.get(OWN_PIECES_KEY);
+            if (own != null)
+                piecesCopies.put(OWN_PIECES_KEY, own);
+
+            for (AdvancedPeerInfo peer : advancedPeerInfo()) {
+                String key = peer.ip() + ":" + peer.port();
+                PiecesCopy peerPieces = PiecesCopy.of(prevCopies.get(key), peer.pieces());
+                piecesCopies.put(key, peerPieces);
+                if (peerPieces.size == numPieces && peerPieces.count == numPieces)
+                    ++seeds;
+                else
+                    addBitfield(avail, peerPieces);
+            }
+        }
+        if (seeds > 0) {
+            for (int i = 0; i < numPieces; i++)
+                avail[i] += seeds;
         }
 
         return avail;
     }
 
+    private static void addBitfield(int[] avail, PiecesCopy pieces)
+    {
+        BitSet bits = pieces.bits;
+        for (int i = bits.nextSetBit(0); i >= 0 && i < avail.length; i = bits.nextSetBit(i + 1))
+            ++avail[i];
+    }
+
+    private PiecesCopy ownPieces(PieceIndexBitfield bitfield)
+    {
+        synchronized (piecesCopies) {
+            PiecesCopy copy = PiecesCopy.of(piecesCopies.get(OWN_PIECES_KEY), bitfield);
+            piecesCopies.put(OWN_PIECES_KEY, copy);
+
+            return copy;
+        }
+    }
+
+    /*
+     * Keeps our own copy up to date between the refreshes,
+     * so that downloaded pieces don't force a re-read
+     */
+
+    private void setOwnPiece(int piece)
+    {
+        synchronized (piecesCopies) {
+            PiecesCopy copy = piecesCopies.get(OWN_PIECES_KEY);
+            if (copy != null && piece < copy.size && !copy.bits.get(piece)) {
+                copy.bits.set(piece);
+                ++copy.count;
+            }
+        }
+    }
+
+    /*
+     * Java copy of the piece bitfield. libtorrent4j doesn't expose
+     * the bitfield words, so a copy costs a native call per piece.
+     * Because pieces are only added to a bitfield, the copy is read
+     * again only if the native number of set bits differs from it
+     */
+
+    private static final class PiecesCopy
+    {
+        final int size;
+        final BitSet bits;
+        int count;
+
+        PiecesCopy(int size)
+        {
+            this.size = size;
+            this.bits = new BitSet(size);
+        }
+
+        static PiecesCopy of(PiecesCopy prev, PieceIndexBitfield bitfield)
+        {
+            int size = bitfield.size();
+            int count = bitfield.count();
+            if (prev != null && prev.size == size && prev.count == count)
+                return prev;
+
+            PiecesCopy copy = new PiecesCopy(size);
+            copy.count = count;
+            if (count == size) {
+                copy.bits.set(0, size);
+            } else if (count > 0) {
+                for (int i = 0; i < size; i++)
+                    if (bitfield.getBit(i))
+                        copy.bits.set(i);
+            }
+
+            return copy;
+        }
+    }
+
     private Pair<Integer, Integer> getFilePieces(TorrentInfo ti, int fileIndex)
     {
         if (operationNotAllowed())
@@ -1556,49 +1710,44 @@ class TorrentDownloadImpl implements TorrentDownload
     }
 
     @Override
-    public void readPiece(int pieceIndex)
+    public CompletableFuture<Void> waitForPiece(int pieceIndex)
     {
-        if (operationNotAllowed())
-            return;
+        CompletableFuture<Void> future = pieceWaiters.awaitFinished(pieceIndex);
+        /* Checked after registering, so that the finish isn't missed */
+        if (havePiece(pieceIndex))
+            future.complete(null);
 
-        th.readPiece(pieceIndex);
+        return future;
     }
 
-    /*
-     * Set the bytes of the selected file that you're interested in
-     * the piece of that specific offset is selected and that piece plus the 1 preceding and the 3 after it.
-     * These pieces will then be prioritised, which results in continuing the sequential download after that piece
-     */
+    @Override
+    public CompletableFuture<Void> readPiece(int pieceIndex,
+                                             @NonNull PieceWaiters.ReadPieceCallback callback)
+    {
+        CompletableFuture<Void> future = pieceWaiters.awaitRead(pieceIndex, callback);
+        if (operationNotAllowed())
+            future.cancel(false);
+        else
+            th.readPiece(pieceIndex);
+
+        return future;
+    }
 
     @Override
-    public void setInterestedPieces(@NonNull TorrentStream stream, int startPiece, int numPieces)
+    public void setPiecesDeadlines(@NonNull TorrentStream stream, int startPiece, @NonNull int[] deadlines)
     {
-        if (startPiece < 0 || numPieces < 0)
+        if (startPiece < 0)
             return;
 
-        for (int i = 0; i < numPieces; i++) {
+        for (int i = 0; i < deadlines.length; i++) {
             int piece = startPiece + i;
-            if (piece > stream.lastFilePiece)
+            if (piece > stream.lastFilePiece || operationNotAllowed())
                 break;
 
-            if (i + 1 == numPieces) {
-                int preloadPieces = PRELOAD_PIECES_COUNT;
-                for (int p = piece; p <= stream.lastFilePiece; p++) {
-                    /* Set max priority to first found piece that is not confirmed finished */
-                    if (!operationNotAllowed() && !th.havePiece(p)) {
-                        th.piecePriority(p, org.libtorrent4j.Priority.TOP_PRIORITY);
-                        th.setPieceDeadline(p, DEFAULT_PIECE_DEADLINE);
-                        preloadPieces--;
-                        if (preloadPieces == 0)
-                            break;
-                    }
-                }
-
-            } else {
-                if (!operationNotAllowed() && !th.havePiece(piece)) {
-                    th.piecePriority(piece, org.libtorrent4j.Priority.TOP_PRIORITY);
-                    th.setPieceDeadline(piece, DEFAULT_PIECE_DEADLINE);
-                }
+            /* Pieces that are already downloaded don't need a deadline */
+            if (!th.havePiece(piece)) {
+                th.piecePriority(piece, org.libtorrent4j.Priority.TOP_PRIORITY);
+                th.setPieceDeadline(piece, deadlines[i]);
             }
         }
     }
@@ -1625,6 +1774,22 @@ class TorrentDownloadImpl implements TorrentDownload
 
     }
 
+    @Override
+    public File getFile(int fileIndex)
+    {
+        if (operationNotAllowed() || !hasMetadata())
+            return null;
+
+        TorrentInfo ti = th.torrentFile();
+        if (ti == null)
+            return null;
+        FileStorage fs = ti.files();
+        if (fileIndex < 0 || fileIndex >= fs.numFiles())
+            return null;
+
+        return new File(th.savePath(), fs.filePath(fileIndex));
+    }
+
     @Override
     public boolean isValid()
     {
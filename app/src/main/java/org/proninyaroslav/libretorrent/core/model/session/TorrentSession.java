@@ -35,6 +35,8 @@ import org.proninyaroslav.libretorrent.core.settings.SessionSettings;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface TorrentSession
 {
@@ -44,8 +46,24 @@ public interface TorrentSession
 
     void removeListener(TorrentEngineListener listener);
 
+    /*
+     * Returns the number of events waiting for delivery, for each listener
+     */
+
+    Map<TorrentEngineListener, Integer> getListenersQueueDepth();
+
+    ThroughputRecorder getThroughputRecorder();
+
     TorrentDownload getTask(String id);
 
+    /*
+     * Returns the task, restoring it if it was skipped at startup
+     * (see SessionSettings.restorePausedOnDemand).
+     * Completes with null if the torrent isn't found or can't be restored
+     */
+
+    CompletableFuture<TorrentDownload> loadTask(@NonNull String id);
+
     void setSettings(@NonNull SessionSettings settings);
 
     void setSettings(@NonNull SessionSettings settings, boolean keepPort);
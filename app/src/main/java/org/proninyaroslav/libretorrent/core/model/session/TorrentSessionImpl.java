@@ -39,15 +39,19 @@ import org.libtorrent4j.TcpEndpoint;
 import org.libtorrent4j.TorrentFlags;
 import org.libtorrent4j.TorrentHandle;
 import org.libtorrent4j.TorrentInfo;
+import org.libtorrent4j.TorrentStatus;
 import org.libtorrent4j.Vectors;
 import org.libtorrent4j.WebSeedEntry;
+import org.libtorrent4j.alerts.AddTorrentAlert;
 import org.libtorrent4j.alerts.Alert;
 import org.libtorrent4j.alerts.AlertType;
 import org.libtorrent4j.alerts.ListenFailedAlert;
 import org.libtorrent4j.alerts.MetadataReceivedAlert;
 import org.libtorrent4j.alerts.PortmapErrorAlert;
 import org.libtorrent4j.alerts.SessionErrorAlert;
+import org.libtorrent4j.alerts.StateUpdateAlert;
 import org.libtorrent4j.alerts.TorrentAlert;
+import org.libtorrent4j.alerts.TorrentRemovedAlert;
 import org.libtorrent4j.swig.add_torrent_params;
 import org.libtorrent4j.swig.alert;
 import org.libtorrent4j.swig.alert_category_t;
@@ -59,6 +63,7 @@ import org.libtorrent4j.swig.error_code;
 import org.libtorrent4j.swig.int_vector;
 import org.libtorrent4j.swig.ip_filter;
 import org.libtorrent4j.swig.libtorrent;
+import org.libtorrent4j.swig.piece_index_bitfield;
 import org.libtorrent4j.swig.session_params;
 import org.libtorrent4j.swig.settings_pack;
 import org.libtorrent4j.swig.sha1_hash;
@@ -93,15 +98,23 @@ import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -126,21 +139,46 @@ public class TorrentSessionImpl extends SessionManager
             AlertType.PEER_LOG.swig(),
             AlertType.PORTMAP_LOG.swig(),
             AlertType.TORRENT_LOG.swig(),
-            AlertType.SESSION_STATS.swig()
+            AlertType.SESSION_STATS.swig(),
+            AlertType.STATE_UPDATE.swig()
     };
 
     /* Base unit in KiB. Used for create torrent */
     private static final int[] pieceSize = {0, 16, 32, 64, 128, 256, 512, 1024, 2048, 4096, 8192, 16384, 32768};
     private static final String PEER_FINGERPRINT = "Lr"; /* called peer id */
     private static final String USER_AGENT = "LibreTorrent %s";
+    private static final String SESSION_STATS_EVENT_KEY = "session_stats";
+    /* Fast resume data of torrents are loaded from the database in batches */
+    private static final int RESTORE_BATCH_SIZE = 50;
+    private static final int RESTORE_DECODE_THREADS =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final long RESTORE_DECODE_IDLE_TIMEOUT = 30; /* sec */
+    /* Torrents that are added to the session but don't have the add alert yet */
+    private static final int MAX_PENDING_RESTORES = 16;
+    /* Don't wait forever in case the add alert is dropped */
+    private static final int RESTORE_PERMIT_TIMEOUT = 10; /* sec */
 
     private InnerListener innerListener;
-    private ConcurrentLinkedQueue<TorrentEngineListener> listeners = new ConcurrentLinkedQueue<>();
+    private TaskAlertRouter taskAlertRouter;
+    private EngineEventBus eventBus = new EngineEventBus();
+    private ThroughputRecorder throughputRecorder = new ThroughputRecorder();
     private SessionSettings settings = new SessionSettings();
     private ReentrantLock settingsLock = new ReentrantLock();
-    private Queue<LoadTorrentTask> restoreTorrentsQueue = new LinkedList<>();
     private ExecutorService loadTorrentsExec;
-    private ConcurrentHashMap<String, TorrentDownload> torrentTasks = new ConcurrentHashMap<>();
+    /* Shared by the restore tasks, the threads are stopped when idle */
+    private ThreadPoolExecutor decodeExec;
+    /* Replaced when the session is stopped, permits of the stopped session are lost */
+    private volatile Semaphore restorePermits = new Semaphore(MAX_PENDING_RESTORES);
+    private Set<String> pendingRestores = ConcurrentHashMap.newKeySet();
+    /* Paused torrents that aren't restored until requested */
+    private ConcurrentHashMap<String, Torrent> deferredTorrents = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, CompletableFuture<TorrentDownload>> loadingTasks = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, TorrentDownloadImpl> torrentTasks = new ConcurrentHashMap<>();
+    private ResumeDataWriter resumeDataWriter;
+    private ResumeSaveScheduler saveScheduler = new ResumeSaveScheduler(
+            ResumeSaveScheduler.DEFAULT_SAVES_PER_SECOND,
+            ResumeSaveScheduler.DEFAULT_MAX_BURST,
+            ResumeSaveScheduler.DEFAULT_MIN_SAVE_INTERVAL);
     /* Wait list for non added magnets */
     private HashSet<String> magnets = new HashSet<>();
     private ConcurrentHashMap<String, byte[]> loadedMagnets = new ConcurrentHashMap<>();
@@ -154,6 +192,8 @@ public class TorrentSessionImpl extends SessionManager
     private boolean started;
     private AtomicBoolean stopRequested;
     private Thread parseIpFilterThread;
+    /* Stats of the current tick, sent after the torrents status update */
+    private volatile SessionStats pendingStats;
 
     public TorrentSessionImpl(@NonNull TorrentRepository repo,
                               @NonNull FileSystemFacade fs,
@@ -168,7 +208,14 @@ public class TorrentSessionImpl extends SessionManager
         this.fs = fs;
         this.system = system;
         innerListener = new InnerListener();
+        taskAlertRouter = new TaskAlertRouter();
         loadTorrentsExec = Executors.newCachedThreadPool();
+        decodeExec = new ThreadPoolExecutor(RESTORE_DECODE_THREADS, RESTORE_DECODE_THREADS,
+                RESTORE_DECODE_IDLE_TIMEOUT, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        decodeExec.allowCoreThreadTimeOut(true);
+        resumeDataWriter = new ResumeDataWriter(repo::addFastResumes,
+                ResumeDataWriter.DEFAULT_FLUSH_INTERVAL,
+                ResumeDataWriter.DEFAULT_MAX_PENDING);
     }
 
     @Override
@@ -180,13 +227,25 @@ public class TorrentSessionImpl extends SessionManager
     @Override
     public void addListener(TorrentEngineListener listener)
     {
-        listeners.add(listener);
+        eventBus.addListener(listener);
     }
 
     @Override
     public void removeListener(TorrentEngineListener listener)
     {
-        listeners.remove(listener);
+        eventBus.removeListener(listener);
+    }
+
+    @Override
+    public ThroughputRecorder getThroughputRecorder()
+    {
+        return throughputRecorder;
+    }
+
+    @Override
+    public Map<TorrentEngineListener, Integer> getListenersQueueDepth()
+    {
+        return eventBus.getQueueDepth();
     }
 
     @Override
@@ -195,6 +254,36 @@ public class TorrentSessionImpl extends SessionManager
         return torrentTasks.get(id);
     }
 
+    @Override
+    public CompletableFuture<TorrentDownload> loadTask(@NonNull String id)
+    {
+        TorrentDownload task = torrentTasks.get(id);
+        if (task != null)
+            return CompletableFuture.completedFuture(task);
+
+        Torrent torrent = deferredTorrents.get(id);
+        if (torrent == null) {
+            CompletableFuture<TorrentDownload> loading = loadingTasks.get(id);
+            return (loading == null ? CompletableFuture.completedFuture(null) : loading);
+        }
+        if (operationNotAllowed())
+            return CompletableFuture.completedFuture(null);
+
+        CompletableFuture<TorrentDownload> future =
+                loadingTasks.computeIfAbsent(id, (k) -> new CompletableFuture<>());
+        if (deferredTorrents.remove(id) != null)
+            loadTorrentsExec.execute(new RestoreTorrentsTask(Collections.singletonList(torrent), false));
+
+        return future;
+    }
+
+    private void completeLoadTask(String id, TorrentDownload task)
+    {
+        CompletableFuture<TorrentDownload> future = loadingTasks.remove(id);
+        if (future != null)
+            future.complete(task);
+    }
+
     public void setSettings(@NonNull SessionSettings settings) {
         setSettings(settings, true);
     }
@@ -376,47 +465,42 @@ public class TorrentSessionImpl extends SessionManager
             return;
 
         TorrentDownload task = getTask(id);
-        if (task == null) {
-            Torrent torrent = repo.getTorrentById(id);
-            if (torrent != null)
-                repo.deleteTorrent(torrent);
+        if (task != null) {
+            task.remove(withFiles);
+
+        } else if (withFiles && deferredTorrents.containsKey(id)) {
+            /* Files are deleted by the session, so the torrent is loaded first */
+            loadTask(id).thenAcceptAsync((loaded) -> {
+                if (loaded == null)
+                    deleteTorrentRecord(id);
+                else
+                    loaded.remove(true);
+            }, loadTorrentsExec);
 
-            notifyListeners((listener) ->
-                    listener.onTorrentRemoved(id));
         } else {
-            task.remove(withFiles);
+            deleteTorrentRecord(id);
         }
     }
 
+    private void deleteTorrentRecord(String id)
+    {
+        deferredTorrents.remove(id);
+        Torrent torrent = repo.getTorrentById(id);
+        if (torrent != null)
+            repo.deleteTorrent(torrent);
+
+        notifyListeners((listener) ->
+                listener.onTorrentRemoved(id));
+    }
+
     @Override
     public void restoreTorrents()
     {
         if (operationNotAllowed())
             return;
 
-        for (Torrent torrent : repo.getAllTorrents()) {
-            if (torrent == null || isTorrentAlreadyRunning(torrent.id))
-                continue;
-
-            String path = null;
-            try {
-                path = fs.makeFileSystemPath(torrent.downloadPath);
-            } catch (UnknownUriException e) {
-                Log.e(TAG, "Unable to restore torrent:");
-                Log.e(TAG, Log.getStackTraceString(e));
-            }
-            LoadTorrentTask loadTask = new LoadTorrentTask(torrent.id);
-            if (path != null && torrent.isDownloadingMetadata()) {
-                loadTask.putMagnet(
-                        torrent.getMagnet(),
-                        new File(path),
-                        torrent.manuallyPaused,
-                        torrent.sequentialDownload
-                );
-            }
-            restoreTorrentsQueue.add(loadTask);
-        }
-        runNextLoadTorrentTask();
+        loadTorrentsExec.execute(new RestoreTorrentsTask(repo.getAllTorrents(),
+                                                         settings.restorePausedOnDemand));
     }
 
     @Override
@@ -473,8 +557,9 @@ public class TorrentSessionImpl extends SessionManager
                         if (b != null)
                             loadedMagnets.put(hash.to_hex(), b);
                     }
+                    byte[] bencode = (ti != null ? new TorrentInfo(ti).bencode() : null);
                     notifyListeners((listener) ->
-                            listener.onMagnetLoaded(strHash, ti != null ? new TorrentInfo(ti).bencode() : null));
+                            listener.onMagnetLoaded(strHash, bencode));
                 } else {
                     add = true;
                 }
@@ -719,6 +804,12 @@ public class TorrentSessionImpl extends SessionManager
                 continue;
             task.resumeManually();
         }
+        for (String id : deferredTorrents.keySet()) {
+            loadTask(id).thenAcceptAsync((task) -> {
+                if (task != null)
+                    task.resumeManually();
+            }, loadTorrentsExec);
+        }
     }
 
     @Override
@@ -820,6 +911,7 @@ public class TorrentSessionImpl extends SessionManager
             return;
 
         saveAllResumeData();
+        resumeDataWriter.flushAsync();
         stopTasks();
     }
 
@@ -853,12 +945,33 @@ public class TorrentSessionImpl extends SessionManager
             super.stop();
     }
 
+    /*
+     * Saves all torrents that need it right away, regardless of the budget.
+     * The torrents wait for the saves as a critical work when stopping
+     */
+
     private void saveAllResumeData()
     {
-        for (TorrentDownload task : torrentTasks.values()) {
+        for (TorrentDownloadImpl task : torrentTasks.values()) {
+            if (task.needSaveResumeData())
+                saveScheduler.markDirty(task.getTorrentId());
+        }
+        for (String id : saveScheduler.drain()) {
+            TorrentDownloadImpl task = torrentTasks.get(id);
             if (task == null || task.hasMissingFiles())
                 continue;
-            task.saveResumeData(false);
+            task.saveResumeDataNow();
+        }
+    }
+
+    private void saveDirtyTorrents()
+    {
+        for (String id : saveScheduler.poll(System.currentTimeMillis())) {
+            TorrentDownloadImpl task = torrentTasks.get(id);
+            /* Don't overwrite the good resume data */
+            if (task == null || task.hasMissingFiles())
+                continue;
+            task.saveResumeDataNow();
         }
     }
 
@@ -883,8 +996,10 @@ public class TorrentSessionImpl extends SessionManager
     @Override
     protected void onBeforeStart()
     {
-        addListener(torrentTaskListener);
+        /* Must be called before the other listeners receive the event */
+        eventBus.addSyncListener(torrentTaskListener);
         addListener(innerListener);
+        addListener(taskAlertRouter);
     }
 
     @Override
@@ -933,17 +1048,36 @@ public class TorrentSessionImpl extends SessionManager
         parseIpFilterThread = null;
         magnets.clear();
         loadedMagnets.clear();
-        removeListener(torrentTaskListener);
+        eventBus.removeListener(torrentTaskListener);
         removeListener(innerListener);
+        removeListener(taskAlertRouter);
     }
 
     @Override
     protected void onAfterStop()
     {
+        /* Write the rest, if torrents are stopped by timeout */
+        resumeDataWriter.flush();
+        throughputRecorder.clear();
+        resetRestoreState();
         notifyListeners(TorrentEngineListener::onSessionStopped);
         stopRequested.set(false);
     }
 
+    /*
+     * The session can be started again, so the restore state of the stopped
+     * session is reset and the waiters of the deferred torrents get null
+     */
+
+    private void resetRestoreState()
+    {
+        restorePermits = new Semaphore(MAX_PENDING_RESTORES);
+        pendingRestores.clear();
+        deferredTorrents.clear();
+        for (String id : loadingTasks.keySet())
+            completeLoadTask(id, null);
+    }
+
     @Override
     protected void onApplySettings(SettingsPack sp)
     {
@@ -955,6 +1089,7 @@ public class TorrentSessionImpl extends SessionManager
         public void onTorrentRemoved(@NonNull String id)
         {
             torrentTasks.remove(id);
+            throughputRecorder.removeTorrent(id);
         }
     };
 
@@ -971,14 +1106,26 @@ public class TorrentSessionImpl extends SessionManager
         {
             switch (alert.type()) {
                 case ADD_TORRENT:
-                    TorrentAlert<?> torrentAlert = (TorrentAlert<?>)alert;
-                    TorrentHandle th = find(torrentAlert.handle().infoHash());
-                    if (th == null)
+                    AddTorrentAlert addAlert = (AddTorrentAlert)alert;
+                    TorrentHandle th = find(addAlert.handle().infoHash());
+                    if (th == null) {
+                        /* Failed to add */
+                        String failedHash = addAlert.params().getInfoHashes().getBest().toHex();
+                        finishRestore(failedHash);
+                        if (addTorrentsList.contains(failedHash) || magnets.contains(failedHash))
+                            completeLoadTask(failedHash, null);
+                        else
+                            handleRestoreError(failedHash,
+                                    new IOException(addAlert.error().getMessage()));
                         break;
+                    }
                     String hash = th.infoHash().toHex();
+                    finishRestore(hash);
                     if (magnets.contains(hash))
                         break;
-                    torrentTasks.put(hash, newTask(th, hash));
+                    TorrentDownloadImpl newTask = newTask(th, hash);
+                    torrentTasks.put(hash, newTask);
+                    completeLoadTask(hash, newTask);
                     if (addTorrentsList.contains(hash))
                         notifyListeners((listener) ->
                                 listener.onTorrentAdded(hash));
@@ -987,7 +1134,6 @@ public class TorrentSessionImpl extends SessionManager
                                 listener.onTorrentLoaded(hash));
                     addTorrentsList.remove(hash);
                     checkStop();
-                    runNextLoadTorrentTask();
                     break;
                 case METADATA_RECEIVED:
                     handleMetadata(((MetadataReceivedAlert)alert));
@@ -995,6 +1141,9 @@ public class TorrentSessionImpl extends SessionManager
                 case SESSION_STATS:
                     handleStats();
                     break;
+                case STATE_UPDATE:
+                    handleStateUpdate((StateUpdateAlert)alert);
+                    break;
                 default:
                     checkError(alert);
                     if (settings.logging)
@@ -1004,40 +1153,77 @@ public class TorrentSessionImpl extends SessionManager
         }
     }
 
+    /*
+     * Routes torrent alerts to the owning task by info hash,
+     * instead of delivering each alert to every task
+     */
+
+    private final class TaskAlertRouter implements AlertListener
+    {
+        @Override
+        public int[] types()
+        {
+            return TorrentDownloadImpl.ALERT_TYPES;
+        }
+
+        @Override
+        public void alert(Alert<?> alert)
+        {
+            if (!(alert instanceof TorrentAlert<?>))
+                return;
+
+            String hash;
+            if (alert instanceof TorrentRemovedAlert)
+                /* Handle is no longer valid */
+                hash = ((TorrentRemovedAlert)alert).swig().getInfo_hashes().get_best().to_hex();
+            else
+                hash = ((TorrentAlert<?>)alert).handle().infoHash().toHex();
+
+            TorrentDownloadImpl task = torrentTasks.get(hash);
+            if (task != null)
+                task.handleAlert(alert);
+        }
+    }
+
     private void checkError(Alert<?> alert)
     {
-        notifyListeners((listener) -> {
-            String msg = null;
-            switch (alert.type()) {
-                case SESSION_ERROR: {
-                    SessionErrorAlert sessionErrorAlert = (SessionErrorAlert)alert;
-                    ErrorCode error = sessionErrorAlert.error();
-                    msg = SessionErrors.getErrorMsg(error);
-                    if (!SessionErrors.isNonCritical(error))
-                        listener.onSessionError(msg);
-                    break;
+        /* Alert is only valid in the alert thread, so read it before notify */
+        String msg = null;
+        switch (alert.type()) {
+            case SESSION_ERROR: {
+                SessionErrorAlert sessionErrorAlert = (SessionErrorAlert)alert;
+                ErrorCode error = sessionErrorAlert.error();
+                msg = SessionErrors.getErrorMsg(error);
+                if (!SessionErrors.isNonCritical(error)) {
+                    String errorMsg = msg;
+                    notifyListeners((listener) -> listener.onSessionError(errorMsg));
                 }
-                case LISTEN_FAILED: {
-                    ListenFailedAlert listenFailedAlert = (ListenFailedAlert)alert;
-                    msg = SessionErrors.getErrorMsg(listenFailedAlert.error());
-                    ErrorCode error = listenFailedAlert.error();
-                    if (!SessionErrors.isNonCritical(error))
-                        listener.onSessionError(msg);
-                    break;
+                break;
+            }
+            case LISTEN_FAILED: {
+                ListenFailedAlert listenFailedAlert = (ListenFailedAlert)alert;
+                msg = SessionErrors.getErrorMsg(listenFailedAlert.error());
+                ErrorCode error = listenFailedAlert.error();
+                if (!SessionErrors.isNonCritical(error)) {
+                    String errorMsg = msg;
+                    notifyListeners((listener) -> listener.onSessionError(errorMsg));
                 }
-                case PORTMAP_ERROR: {
-                    PortmapErrorAlert portmapErrorAlert = (PortmapErrorAlert)alert;
-                    ErrorCode error = portmapErrorAlert.error();
-                    msg = SessionErrors.getErrorMsg(error);
-                    if (!SessionErrors.isNonCritical(error))
-                        listener.onNatError(msg);
-                    break;
+                break;
+            }
+            case PORTMAP_ERROR: {
+                PortmapErrorAlert portmapErrorAlert = (PortmapErrorAlert)alert;
+                ErrorCode error = portmapErrorAlert.error();
+                msg = SessionErrors.getErrorMsg(error);
+                if (!SessionErrors.isNonCritical(error)) {
+                    String errorMsg = msg;
+                    notifyListeners((listener) -> listener.onNatError(errorMsg));
                 }
+                break;
             }
+        }
 
-            if (msg != null)
-                Log.e(TAG, "Session error: " + msg);
-        });
+        if (msg != null)
+            Log.e(TAG, "Session error: " + msg);
     }
 
     private void handleMetadata(MetadataReceivedAlert metadataAlert)
@@ -1052,8 +1238,9 @@ public class TorrentSessionImpl extends SessionManager
             loadedMagnets.put(hash, ti.bencode());
         remove(th, SessionHandle.DELETE_FILES);
 
+        byte[] bencode = loadedMagnets.get(hash);
         notifyListeners((listener) ->
-                listener.onMagnetLoaded(hash, loadedMagnets.get(hash)));
+                listener.onMagnetLoaded(hash, bencode));
     }
 
     private void handleStats()
@@ -1061,14 +1248,41 @@ public class TorrentSessionImpl extends SessionManager
         if (operationNotAllowed())
             return;
 
-        notifyListeners((listener) -> listener.onSessionStats(
-                new SessionStats(dhtNodes(),
-                        getTotalDownload(),
-                        getTotalUpload(),
-                        getDownloadSpeed(),
-                        getUploadSpeed(),
-                        getListenPort()))
-        );
+        pendingStats = new SessionStats(dhtNodes(),
+                getTotalDownload(),
+                getTotalUpload(),
+                getDownloadSpeed(),
+                getUploadSpeed(),
+                getListenPort());
+        /*
+         * Request status of all changed torrents in one batch;
+         * stats will be sent to the listeners with state_update_alert
+         */
+        swig().post_torrent_updates(TorrentHandle.QUERY_ACCURATE_DOWNLOAD_COUNTERS);
+    }
+
+    private void handleStateUpdate(StateUpdateAlert alert)
+    {
+        for (TorrentStatus status : alert.status()) {
+            String hash = status.swig().getInfo_hashes().get_best().to_hex();
+            TorrentDownloadImpl task = torrentTasks.get(hash);
+            if (task == null)
+                continue;
+            task.updateStatus(status);
+            /* Changed since the last save, e.g. pieces are downloaded */
+            if (status.needSaveResume())
+                saveScheduler.markDirty(hash);
+        }
+        if (!stopRequested.get())
+            saveDirtyTorrents();
+
+        SessionStats stats = pendingStats;
+        pendingStats = null;
+        if (stats == null || operationNotAllowed())
+            return;
+
+        throughputRecorder.sample(stats, torrentTasks.values());
+        notifyListeners(SESSION_STATS_EVENT_KEY, (listener) -> listener.onSessionStats(stats));
     }
 
     private static String dhtBootstrapNodes()
@@ -1333,49 +1547,24 @@ public class TorrentSessionImpl extends SessionManager
         return Vectors.byte_vector2bytes(e.bencode());
     }
 
-    private TorrentDownload newTask(TorrentHandle th, String id)
+    private TorrentDownloadImpl newTask(TorrentHandle th, String id)
     {
-        TorrentDownload task = new TorrentDownloadImpl(this, repo, fs, listeners,
-                id, th, settings.autoManaged);
+        TorrentDownloadImpl task = new TorrentDownloadImpl(this, repo, resumeDataWriter,
+                saveScheduler, fs, eventBus, id, th, settings.autoManaged);
         task.setMaxConnections(settings.connectionsLimitPerTorrent);
         task.setMaxUploads(settings.uploadsLimitPerTorrent);
 
         return task;
     }
 
-    private interface CallListener
+    private void notifyListeners(@NonNull EngineEventBus.CallListener l)
     {
-        void apply(TorrentEngineListener listener);
+        eventBus.post(l);
     }
 
-    private void notifyListeners(@NonNull CallListener l)
+    private void notifyListeners(@NonNull String key, @NonNull EngineEventBus.CallListener l)
     {
-        for (TorrentEngineListener listener : listeners) {
-            if (listener != null)
-                l.apply(listener);
-        }
-    }
-
-    private void runNextLoadTorrentTask()
-    {
-        if (operationNotAllowed()) {
-            restoreTorrentsQueue.clear();
-
-            return;
-        }
-
-        LoadTorrentTask task;
-        try {
-            task = restoreTorrentsQueue.poll();
-
-        } catch (Exception e) {
-            Log.e(TAG, Log.getStackTraceString(e));
-
-            return;
-        }
-
-        if (task != null)
-            loadTorrentsExec.execute(task);
+        eventBus.post(key, l);
     }
 
     private boolean isTorrentAlreadyRunning(String torrentId)
@@ -1383,59 +1572,198 @@ public class TorrentSessionImpl extends SessionManager
         return torrentTasks.containsKey(torrentId) || addTorrentsList.contains(torrentId);
     }
 
-    private final class LoadTorrentTask implements Runnable
+    /*
+     * Restores torrents with bounded concurrency: the fast resume data of the next
+     * batch is loaded while the current batch is decoded on worker threads,
+     * and up to MAX_PENDING_RESTORES torrents are being added at the same time.
+     * Torrents are restored in order of importance, see restoreRank()
+     */
+
+    private final class RestoreTorrentsTask implements Runnable
     {
-        private String torrentId;
-        private File saveDir = null;
-        private String magnetUri = null;
-        private boolean isMagnet = false;
-        private boolean magnetPaused = false;
-        private boolean magnetSequentialDownload = false;
+        private final List<Torrent> torrents;
+        /* Manually paused torrents are restored when requested, see loadTask() */
+        private final boolean deferPaused;
 
-        LoadTorrentTask(String torrentId)
+        RestoreTorrentsTask(List<Torrent> torrents, boolean deferPaused)
         {
-            this.torrentId = torrentId;
+            this.torrents = torrents;
+            this.deferPaused = deferPaused;
         }
 
-        public void putMagnet(
-                String magnetUri,
-                File saveDir,
-                boolean magnetPaused,
-                boolean magnetSequentialDownload
-        ) {
-            this.magnetUri = magnetUri;
-            this.saveDir = saveDir;
-            this.magnetPaused = magnetPaused;
-            this.magnetSequentialDownload = magnetSequentialDownload;
-            isMagnet = true;
-        }
+        /* Decoding isn't needed if the restore is stopped */
+        private final ArrayList<CompletableFuture<add_torrent_params>> decoding = new ArrayList<>();
 
         @Override
         public void run()
         {
             try {
-                if (isTorrentAlreadyRunning(torrentId))
-                    return;
+                ArrayList<Torrent> resumed = new ArrayList<>();
+                for (Torrent torrent : torrents) {
+                    if (operationNotAllowed())
+                        return;
+                    if (torrent == null || isTorrentAlreadyRunning(torrent.id))
+                        continue;
+                    if (torrent.isDownloadingMetadata())
+                        restoreMagnet(torrent);
+                    else if (deferPaused && torrent.manuallyPaused)
+                        deferredTorrents.put(torrent.id, torrent);
+                    else
+                        resumed.add(torrent);
+                }
+                Collections.sort(resumed, (a, b) -> Integer.compare(restoreRank(a), restoreRank(b)));
+
+                List<CompletableFuture<add_torrent_params>> batch = null;
+                List<Torrent> batchTorrents = null;
+                for (int i = 0; i < resumed.size(); i += RESTORE_BATCH_SIZE) {
+                    List<Torrent> next = resumed.subList(i, Math.min(i + RESTORE_BATCH_SIZE, resumed.size()));
+                    List<CompletableFuture<add_torrent_params>> nextBatch = decodeBatch(next);
+                    if (batch != null)
+                        addBatch(batchTorrents, batch);
+                    batch = nextBatch;
+                    batchTorrents = next;
+                    if (operationNotAllowed())
+                        return;
+                }
+                if (batch != null)
+                    addBatch(batchTorrents, batch);
 
-                if (isMagnet)
-                    download(magnetUri, saveDir, magnetPaused, magnetSequentialDownload);
-                else
-                    restoreDownload(torrentId);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+            } finally {
+                for (CompletableFuture<add_torrent_params> future : decoding)
+                    future.cancel(false);
+            }
+        }
+
+        private void restoreMagnet(Torrent torrent)
+        {
+            try {
+                String path = fs.makeFileSystemPath(torrent.downloadPath);
+                download(torrent.getMagnet(), new File(path),
+                         torrent.manuallyPaused, torrent.sequentialDownload);
 
             } catch (Exception e) {
-                Log.e(TAG, "Unable to restore torrent from previous session: " + torrentId, e);
-                Torrent torrent = repo.getTorrentById(torrentId);
-                if (torrent != null) {
-                    torrent.error = e.toString();
-                    repo.updateTorrent(torrent);
+                handleRestoreError(torrent.id, e);
+            }
+        }
+
+        private List<CompletableFuture<add_torrent_params>> decodeBatch(List<Torrent> torrents)
+        {
+            ArrayList<String> ids = new ArrayList<>(torrents.size());
+            for (Torrent torrent : torrents)
+                ids.add(torrent.id);
+
+            HashMap<String, FastResume> fastResumes = new HashMap<>();
+            for (FastResume fastResume : repo.getFastResumeByIds(ids))
+                fastResumes.put(fastResume.torrentId, fastResume);
+
+            /* A single torrent (e.g. loaded on demand) is decoded inline */
+            Executor exec = torrents.size() == 1 ? Runnable::run : decodeExec;
+            ArrayList<CompletableFuture<add_torrent_params>> futures = new ArrayList<>(torrents.size());
+            for (Torrent torrent : torrents) {
+                FastResume fastResume = fastResumes.get(torrent.id);
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    if (fastResume == null)
+                        throw new IllegalStateException("Fast resume data not found");
+
+                    return decodeResumeData(fastResume);
+                }, exec));
+            }
+            decoding.addAll(futures);
+
+            return futures;
+        }
+
+        private void addBatch(List<Torrent> torrents,
+                              List<CompletableFuture<add_torrent_params>> batch)
+                throws InterruptedException
+        {
+            ArrayList<Pair<String, add_torrent_params>> decoded = new ArrayList<>(batch.size());
+            ArrayList<Integer> ranks = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                Torrent torrent = torrents.get(i);
+                try {
+                    add_torrent_params p = batch.get(i).get();
+                    decoded.add(new Pair<>(torrent.id, p));
+                    /*
+                     * Seeding torrents go after downloading ones of the same rank within
+                     * the batch; the finished state is known only after decoding
+                     */
+                    ranks.add(restoreRank(torrent) * 2 + (isFinished(p) ? 1 : 0));
+
+                } catch (ExecutionException e) {
+                    handleRestoreError(torrent.id, e.getCause());
                 }
+            }
+            Integer[] order = new Integer[decoded.size()];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, (a, b) -> Integer.compare(ranks.get(a), ranks.get(b)));
+
+            for (int i : order) {
+                String id = decoded.get(i).first;
+                add_torrent_params p = decoded.get(i).second;
+                if (operationNotAllowed() || isTorrentAlreadyRunning(id))
+                    continue;
+                if (!restorePermits.tryAcquire(RESTORE_PERMIT_TIMEOUT, TimeUnit.SECONDS))
+                    Log.w(TAG, "Timeout waiting for the added torrents, continue restoring");
+                else
+                    pendingRestores.add(id);
+
+                try {
+                    restoreDownload(p);
 
-                notifyListeners((listener) ->
-                        listener.onRestoreSessionError(torrentId));
+                } catch (Exception e) {
+                    finishRestore(id);
+                    handleRestoreError(id, e);
+                }
             }
         }
     }
 
+    /*
+     * Active torrents first, then paused and errored
+     */
+
+    private static int restoreRank(Torrent torrent)
+    {
+        if (!TextUtils.isEmpty(torrent.error))
+            return 2;
+        else if (torrent.manuallyPaused)
+            return 1;
+        else
+            return 0;
+    }
+
+    private static boolean isFinished(add_torrent_params p)
+    {
+        piece_index_bitfield pieces = p.getHave_pieces();
+
+        return pieces.size() > 0 && pieces.all_set();
+    }
+
+    private void finishRestore(String id)
+    {
+        if (pendingRestores.remove(id))
+            restorePermits.release();
+    }
+
+    private void handleRestoreError(String torrentId, Throwable e)
+    {
+        Log.e(TAG, "Unable to restore torrent from previous session: " + torrentId, e);
+        Torrent torrent = repo.getTorrentById(torrentId);
+        if (torrent != null) {
+            torrent.error = e.toString();
+            repo.updateTorrent(torrent);
+        }
+        completeLoadTask(torrentId, null);
+
+        notifyListeners((listener) ->
+                listener.onRestoreSessionError(torrentId));
+    }
+
     private void download(byte[] bencode, File saveDir,
                           Priority[] priorities, boolean sequentialDownload,
                           boolean paused, List<TcpEndpoint> peers)
@@ -1584,17 +1912,14 @@ public class TorrentSessionImpl extends SessionManager
         settings.defaultTrackersList = trackersList;
     }
 
-    private void restoreDownload(String id) throws IOException
-    {
-        if (operationNotAllowed())
-            return;
-
-        FastResume fastResume = repo.getFastResumeById(id);
-        if (fastResume == null)
-            throw new IOException("Fast resume data not found");
+    /*
+     * Can be called in parallel, doesn't access the session
+     */
 
+    private add_torrent_params decodeResumeData(FastResume fastResume)
+    {
         error_code ec = new error_code();
-        byte_vector buffer = Vectors.bytes2byte_vector(fastResume.data);
+        byte_vector buffer = Vectors.bytes2byte_vector(ResumeDataCodec.decode(fastResume.data));
 
         bdecode_node n = new bdecode_node();
         int ret = bdecode_node.bdecode(buffer, n, ec);
@@ -1606,6 +1931,21 @@ public class TorrentSessionImpl extends SessionManager
         if (ec.value() != 0)
             throw new IllegalArgumentException("Unable to read the resume data: " + ec.message());
 
+        /* Resume data saved without the info dictionary, it's stored separately */
+        torrent_info ti = p.getTi();
+        if (ti == null || !ti.is_valid()) {
+            byte[] info;
+            try {
+                info = repo.getTorrentInfo(fastResume.torrentId);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Unable to read the info dictionary", e);
+            }
+            /* Otherwise the torrent isn't added without any error */
+            if (info == null)
+                throw new IllegalArgumentException("Info dictionary not found");
+            p.setTi(TorrentInfo.bdecode(info).swig());
+        }
+
         torrent_flags_t flags = p.getFlags();
         /* Disable force saving resume data, because they already have */
         flags = flags.and_(TorrentFlags.NEED_SAVE_RESUME.inv());
@@ -1617,6 +1957,11 @@ public class TorrentSessionImpl extends SessionManager
 
         p.setFlags(flags);
 
+        return p;
+    }
+
+    private void restoreDownload(add_torrent_params p)
+    {
         /* After reading the metadata some time may have passed */
         if (operationNotAllowed())
             return;
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import static org.proninyaroslav.libretorrent.core.model.data.TorrentInfo.MAX_ETA;
+
+import androidx.annotation.NonNull;
+
+import org.libtorrent4j.TorrentFlags;
+import org.libtorrent4j.TorrentStatus;
+import org.proninyaroslav.libretorrent.core.model.data.TorrentStateCode;
+
+/*
+ * Immutable copy of the torrent status, taken once per session tick.
+ * All values are read from the native status in the constructor,
+ * so reading the fields doesn't cause any JNI calls.
+ */
+
+public class TorrentStatusSnapshot
+{
+    private static final double MAX_RATIO = 9999.;
+
+    public final long timestamp;
+    /* Session state the snapshot was taken with, it affects the torrent state */
+    public final boolean sessionRunning;
+    public final boolean sessionPaused;
+    public final TorrentStateCode stateCode;
+    public final boolean paused;
+    public final boolean finished;
+    public final boolean seeding;
+    public final boolean sequentialDownload;
+    public final boolean autoManaged;
+    /* A value in the range [0, 100] */
+    public final int progress;
+    public final long receivedBytes;
+    public final long totalSentBytes;
+    public final long totalWanted;
+    public final long downloadSpeed;
+    public final long uploadSpeed;
+    public final long eta;
+    public final int connectedPeers;
+    public final int connectedSeeds;
+    public final int connectedLeechers;
+    public final int totalPeers;
+    public final int totalSeeds;
+    public final int totalLeechers;
+    public final int numDownloadedPieces;
+    public final double shareRatio;
+    /* In seconds */
+    public final long activeTime;
+    public final long seedingTime;
+
+    TorrentStatusSnapshot(@NonNull TorrentStatus ts,
+                          boolean sessionRunning,
+                          boolean sessionPaused)
+    {
+        timestamp = System.currentTimeMillis();
+        this.sessionRunning = sessionRunning;
+        this.sessionPaused = sessionPaused;
+
+        paused = isPaused(ts) || sessionPaused || !sessionRunning;
+        finished = ts.isFinished();
+        seeding = ts.isSeeding();
+        sequentialDownload = ts.flags().and_(TorrentFlags.SEQUENTIAL_DOWNLOAD).non_zero();
+        autoManaged = ts.flags().and_(TorrentFlags.AUTO_MANAGED).non_zero();
+        stateCode = stateCodeOf(ts, sessionRunning, paused);
+
+        progress = progressOf(ts);
+        receivedBytes = ts.totalDone();
+        totalSentBytes = ts.allTimeUpload();
+        totalWanted = ts.totalWanted();
+        downloadSpeed = (finished || paused || seeding ? 0 : ts.downloadPayloadRate());
+        uploadSpeed = (finished && !seeding || paused ? 0 : ts.uploadPayloadRate());
+        eta = etaOf(ts, stateCode);
+
+        int numPeers = ts.numPeers();
+        int numSeeds = ts.numSeeds();
+        int numComplete = ts.numComplete();
+        int numIncomplete = ts.numIncomplete();
+        int listPeers = ts.listPeers();
+        int listSeeds = ts.listSeeds();
+        connectedPeers = numPeers;
+        connectedSeeds = numSeeds;
+        connectedLeechers = numPeers - numSeeds;
+        totalPeers = (numComplete + numIncomplete > 0 ? numComplete + numIncomplete : listPeers);
+        totalSeeds = (numComplete > 0 ? numComplete : listSeeds);
+        totalLeechers = (numIncomplete > 0 ? numIncomplete : listPeers - listSeeds);
+
+        numDownloadedPieces = ts.numPieces();
+        shareRatio = shareRatioOf(ts);
+        activeTime = ts.activeDuration() / 1000L;
+        seedingTime = ts.seedingDuration() / 1000L;
+    }
+
+    static boolean isPaused(TorrentStatus ts)
+    {
+        return ts.flags().and_(TorrentFlags.PAUSED).non_zero();
+    }
+
+    static TorrentStateCode stateCodeOf(TorrentStatus ts, boolean sessionRunning, boolean paused)
+    {
+        if (!sessionRunning)
+            return TorrentStateCode.STOPPED;
+
+        if (paused)
+            return TorrentStateCode.PAUSED;
+
+        if (ts.isFinished())
+            return TorrentStateCode.SEEDING;
+
+        return stateToStateCode(ts.state());
+    }
+
+    static TorrentStateCode stateToStateCode(TorrentStatus.State state)
+    {
+        switch (state) {
+            case CHECKING_RESUME_DATA:
+            case CHECKING_FILES:
+                return TorrentStateCode.CHECKING;
+            case DOWNLOADING_METADATA:
+                return TorrentStateCode.DOWNLOADING_METADATA;
+            case DOWNLOADING:
+                return TorrentStateCode.DOWNLOADING;
+            case FINISHED:
+                return TorrentStateCode.FINISHED;
+            case SEEDING:
+                return TorrentStateCode.SEEDING;
+            default:
+                return TorrentStateCode.UNKNOWN;
+        }
+    }
+
+    static int progressOf(TorrentStatus ts)
+    {
+        float fp = ts.progress();
+        if (Float.compare(fp, 1f) == 0)
+            return 100;
+
+        int p = (int)(fp * 100);
+        if (p > 0)
+            return Math.min(p, 100);
+
+        return 0;
+    }
+
+    static long etaOf(TorrentStatus ts, TorrentStateCode stateCode)
+    {
+        if (stateCode != TorrentStateCode.DOWNLOADING)
+            return MAX_ETA;
+
+        long left = ts.totalWanted() - ts.totalWantedDone();
+        long rate = ts.downloadPayloadRate();
+        if (left <= 0)
+            return 0;
+        if (rate <= 0)
+            return MAX_ETA;
+
+        return Math.min(left / rate, MAX_ETA);
+    }
+
+    static double shareRatioOf(TorrentStatus ts)
+    {
+        long allTimeUpload = ts.allTimeUpload();
+        long allTimeDownload = ts.allTimeDownload();
+        long totalDone = ts.totalDone();
+        /*
+         * Special case for a seeder who lost its stats,
+         * also assume nobody will import a 99% done torrent
+         */
+        long downloaded = (allTimeDownload < totalDone * 0.01 ? totalDone : allTimeDownload);
+        if (downloaded == 0)
+            return (allTimeUpload == 0 ? 0.0 : MAX_RATIO);
+        double ratio = (double)allTimeUpload / (double)downloaded;
+
+        return Math.min(ratio, MAX_RATIO);
+    }
+
+    @NonNull
+    @Override
+    public String toString()
+    {
+        return "TorrentStatusSnapshot{" +
+                "timestamp=" + timestamp +
+                ", stateCode=" + stateCode +
+                ", progress=" + progress +
+                ", receivedBytes=" + receivedBytes +
+                ", totalSentBytes=" + totalSentBytes +
+                ", downloadSpeed=" + downloadSpeed +
+                ", uploadSpeed=" + uploadSpeed +
+                ", eta=" + eta +
+                ", connectedPeers=" + connectedPeers +
+                ", totalPeers=" + totalPeers +
+                '}';
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Inclusive range of bytes of the Range header (RFC 7233)
+ */
+
+class ByteRange
+{
+    /* More ranges are ignored and the whole file is returned */
+    static final int MAX_RANGES = 16;
+    private static final String BYTES_UNIT = "bytes=";
+
+    final long start;
+    final long end;
+
+    ByteRange(long start, long end)
+    {
+        this.start = start;
+        this.end = end;
+    }
+
+    long length()
+    {
+        return end - start + 1;
+    }
+
+    @NonNull
+    String toContentRange(long size)
+    {
+        return "bytes " + start + "-" + end + "/" + size;
+    }
+
+    /*
+     * Returns the satisfiable ranges in ascending order, overlapping and adjacent
+     * ranges are coalesced. Returns empty list if no range is satisfiable,
+     * or null if the header is invalid and must be ignored
+     */
+
+    @Nullable
+    static List<ByteRange> parse(@NonNull String header, long size)
+    {
+        if (!header.startsWith(BYTES_UNIT))
+            return null;
+
+        String[] specs = header.substring(BYTES_UNIT.length()).split(",");
+        if (specs.length > MAX_RANGES)
+            return null;
+
+        ArrayList<ByteRange> ranges = new ArrayList<>(specs.length);
+        try {
+            for (String spec : specs) {
+                spec = spec.trim();
+                int minus = spec.indexOf('-');
+                if (minus < 0)
+                    return null;
+
+                String first = spec.substring(0, minus).trim();
+                String last = spec.substring(minus + 1).trim();
+                long start, end;
+                if (first.isEmpty()) {
+                    /* Suffix range, the last N bytes */
+                    long suffix = Long.parseLong(last);
+                    if (suffix < 0)
+                        return null;
+                    if (suffix == 0 || size == 0)
+                        continue;
+                    start = Math.max(0, size - suffix);
+                    end = size - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    end = (last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last));
+                    if (start < 0 || end < start)
+                        return null;
+                    if (start >= size)
+                        continue;
+                    end = Math.min(end, size - 1);
+                }
+                ranges.add(new ByteRange(start, end));
+            }
+
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        return coalesce(ranges);
+    }
+
+    private static List<ByteRange> coalesce(ArrayList<ByteRange> ranges)
+    {
+        if (ranges.size() < 2)
+            return ranges;
+
+        Collections.sort(ranges, (a, b) -> Long.compare(a.start, b.start));
+        ArrayList<ByteRange> res = new ArrayList<>(ranges.size());
+        ByteRange prev = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            ByteRange range = ranges.get(i);
+            if (range.start <= prev.end + 1) {
+                prev = new ByteRange(prev.start, Math.max(prev.end, range.end));
+            } else {
+                res.add(prev);
+                prev = range;
+            }
+        }
+        res.add(prev);
+
+        return res;
+    }
+}
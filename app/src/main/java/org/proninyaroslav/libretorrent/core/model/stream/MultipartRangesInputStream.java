@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/*
+ * The body of the multipart/byteranges response. The ranges must be
+ * in ascending order, so that they're read from the source
+ * by skipping forward only
+ */
+
+class MultipartRangesInputStream extends InputStream
+{
+    private final InputStream source;
+    private final List<ByteRange> ranges;
+    private final byte[][] partHeaders;
+    private final byte[] trailer;
+    private long sourcePos;
+    private int partIndex;
+    /* Position in the part header, or in the range data after the header */
+    private int headerPos;
+    private long rangePos;
+    private int trailerPos;
+
+    MultipartRangesInputStream(@NonNull InputStream source,
+                               @NonNull List<ByteRange> ranges,
+                               @NonNull String boundary,
+                               @NonNull String contentType,
+                               long size)
+    {
+        this.source = source;
+        this.ranges = ranges;
+        partHeaders = makePartHeaders(ranges, boundary, contentType, size);
+        trailer = makeTrailer(boundary);
+    }
+
+    static String contentType(@NonNull String boundary)
+    {
+        return "multipart/byteranges; boundary=" + boundary;
+    }
+
+    /*
+     * Returns the length of the body without reading it, e.g. for HEAD requests
+     */
+
+    static long contentLength(@NonNull List<ByteRange> ranges,
+                              @NonNull String boundary,
+                              @NonNull String contentType,
+                              long size)
+    {
+        long len = makeTrailer(boundary).length;
+        byte[][] partHeaders = makePartHeaders(ranges, boundary, contentType, size);
+        for (int i = 0; i < ranges.size(); i++)
+            len += partHeaders[i].length + ranges.get(i).length();
+
+        return len;
+    }
+
+    private static byte[][] makePartHeaders(List<ByteRange> ranges, String boundary,
+                                            String contentType, long size)
+    {
+        byte[][] headers = new byte[ranges.size()][];
+        for (int i = 0; i < ranges.size(); i++) {
+            /* Line break after the previous part belongs to the boundary */
+            String header = (i == 0 ? "" : "\r\n") +
+                    "--" + boundary + "\r\n" +
+                    "Content-Type: " + contentType + "\r\n" +
+                    "Content-Range: " + ranges.get(i).toContentRange(size) + "\r\n" +
+                    "\r\n";
+            headers[i] = header.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        return headers;
+    }
+
+    private static byte[] makeTrailer(String boundary)
+    {
+        return ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+
+        return (n <= 0 ? -1 : b[0] & 0xff);
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException
+    {
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        else if (len == 0)
+            return 0;
+
+        while (partIndex < ranges.size()) {
+            byte[] header = partHeaders[partIndex];
+            if (headerPos < header.length) {
+                int n = Math.min(len, header.length - headerPos);
+                System.arraycopy(header, headerPos, b, off, n);
+                headerPos += n;
+
+                return n;
+            }
+
+            ByteRange range = ranges.get(partIndex);
+            if (rangePos < range.length()) {
+                if (!seek(range.start + rangePos))
+                    return -1;
+                int n = source.read(b, off, (int)Math.min(len, range.length() - rangePos));
+                if (n < 0)
+                    return -1;
+                sourcePos += n;
+                rangePos += n;
+
+                return n;
+            }
+
+            partIndex++;
+            headerPos = 0;
+            rangePos = 0;
+        }
+
+        if (trailerPos == trailer.length)
+            return -1;
+        int n = Math.min(len, trailer.length - trailerPos);
+        System.arraycopy(trailer, trailerPos, b, off, n);
+        trailerPos += n;
+
+        return n;
+    }
+
+    private boolean seek(long pos) throws IOException
+    {
+        while (sourcePos < pos) {
+            long n = source.skip(pos - sourcePos);
+            if (n <= 0)
+                return false;
+            sourcePos += n;
+        }
+
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        source.close();
+    }
+}
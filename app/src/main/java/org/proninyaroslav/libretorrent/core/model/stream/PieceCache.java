@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Pieces read for streaming, shared by all streams of all torrents.
+ * Least recently used pieces are evicted when the size of the cached pieces
+ * exceeds the limit. Buffers of the evicted pieces are reused for the new ones,
+ * and the free buffers are counted towards the limit too.
+ */
+
+public class PieceCache
+{
+    private static final class Key
+    {
+        final String torrentId;
+        final int piece;
+
+        Key(String torrentId, int piece)
+        {
+            this.torrentId = torrentId;
+            this.piece = piece;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * torrentId.hashCode() + piece;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+
+            Key key = (Key)o;
+
+            return piece == key.piece && torrentId.equals(key.torrentId);
+        }
+    }
+
+    private static final class Entry
+    {
+        final byte[] buf;
+        final int size;
+
+        Entry(byte[] buf, int size)
+        {
+            this.buf = buf;
+            this.size = size;
+        }
+    }
+
+    /* Guarded by this */
+    private final LinkedHashMap<Key, Entry> pieces = new LinkedHashMap<>(16, 0.75f, true);
+    /* Free buffers by capacity */
+    private final HashMap<Integer, ArrayDeque<byte[]>> pool = new HashMap<>();
+    private long maxSize;
+    private long cachedSize;
+    private long pooledSize;
+    private long hitCount;
+    private long missCount;
+
+    public PieceCache(long maxSize)
+    {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("Max size must be non-negative");
+
+        this.maxSize = maxSize;
+    }
+
+    public synchronized void setMaxSize(long maxSize)
+    {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("Max size must be non-negative");
+
+        this.maxSize = maxSize;
+        trim(0, -1);
+    }
+
+    public synchronized long getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /*
+     * Size of the cached pieces and the free buffers
+     */
+
+    public synchronized long getSize()
+    {
+        return cachedSize + pooledSize;
+    }
+
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    public synchronized boolean contains(@NonNull String torrentId, int piece)
+    {
+        return pieces.containsKey(new Key(torrentId, piece));
+    }
+
+    /*
+     * Copies the piece region to the buffer.
+     * Returns false if the piece isn't cached
+     */
+
+    public synchronized boolean read(@NonNull String torrentId, int piece, int offset,
+                                     @NonNull byte[] dst, int dstOffset, int len)
+    {
+        Entry entry = pieces.get(new Key(torrentId, piece));
+        if (entry == null || offset + len > entry.size) {
+            ++missCount;
+            return false;
+        }
+        ++hitCount;
+        System.arraycopy(entry.buf, offset, dst, dstOffset, len);
+
+        return true;
+    }
+
+    /*
+     * Returns a free buffer with the given capacity, a buffer of the
+     * least recently used piece, or a new one.
+     * The buffer must be passed to put() or released
+     */
+
+    @NonNull
+    public byte[] acquireBuffer(int capacity)
+    {
+        synchronized (this) {
+            ArrayDeque<byte[]> free = pool.get(capacity);
+            byte[] buf = (free == null ? null : free.poll());
+            if (buf != null) {
+                pooledSize -= capacity;
+                return buf;
+            }
+            buf = trim(capacity, capacity);
+            if (buf != null)
+                return buf;
+        }
+
+        return new byte[capacity];
+    }
+
+    /*
+     * Keeps the buffer for reuse if there is room for it
+     */
+
+    public synchronized void releaseBuffer(@NonNull byte[] buf)
+    {
+        if (cachedSize + pooledSize + buf.length > maxSize)
+            return;
+
+        ArrayDeque<byte[]> free = pool.get(buf.length);
+        if (free == null) {
+            free = new ArrayDeque<>();
+            pool.put(buf.length, free);
+        }
+        free.add(buf);
+        pooledSize += buf.length;
+    }
+
+    /*
+     * The cache takes ownership of the buffer
+     */
+
+    public synchronized void put(@NonNull String torrentId, int piece,
+                                 @NonNull byte[] buf, int size)
+    {
+        if (buf.length > maxSize)
+            return;
+
+        Key key = new Key(torrentId, piece);
+        Entry prev = pieces.remove(key);
+        if (prev != null) {
+            cachedSize -= prev.buf.length;
+            releaseBuffer(prev.buf);
+        }
+
+        trim(buf.length, -1);
+        pieces.put(key, new Entry(buf, size));
+        cachedSize += buf.length;
+    }
+
+    public synchronized void remove(@NonNull String torrentId)
+    {
+        Iterator<Map.Entry<Key, Entry>> it = pieces.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> e = it.next();
+            if (e.getKey().torrentId.equals(torrentId)) {
+                byte[] buf = e.getValue().buf;
+                cachedSize -= buf.length;
+                it.remove();
+                releaseBuffer(buf);
+            }
+        }
+    }
+
+    public synchronized void clear()
+    {
+        pieces.clear();
+        pool.clear();
+        cachedSize = 0;
+        pooledSize = 0;
+    }
+
+    /*
+     * Frees space for the given number of bytes: first drops the free buffers,
+     * then evicts the least recently used pieces. Returns the buffer of an evicted
+     * piece with the reusable capacity (no longer counted), or null
+     */
+
+    private byte[] trim(long needed, int reuseCapacity)
+    {
+        Iterator<ArrayDeque<byte[]>> poolIt = pool.values().iterator();
+        while (cachedSize + pooledSize + needed > maxSize && poolIt.hasNext()) {
+            ArrayDeque<byte[]> free = poolIt.next();
+            byte[] buf;
+            while (cachedSize + pooledSize + needed > maxSize && (buf = free.poll()) != null)
+                pooledSize -= buf.length;
+            if (free.isEmpty())
+                poolIt.remove();
+        }
+
+        byte[] reuse = null;
+        Iterator<Entry> it = pieces.values().iterator();
+        while (cachedSize + needed > maxSize && it.hasNext()) {
+            Entry entry = it.next();
+            cachedSize -= entry.buf.length;
+            it.remove();
+            if (reuse == null && entry.buf.length == reuseCapacity)
+                reuse = entry.buf;
+        }
+
+        return reuse;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+/*
+ * Tracks the consumption rate of the stream and calculates how many pieces
+ * to keep ahead of the read position and when each of them is needed.
+ * Until the rate is known, a fixed window with 1 second steps is used.
+ */
+
+class ReadAheadPolicy
+{
+    /* Playback time to keep ahead of the read position */
+    static final int READ_AHEAD_TIME = 20000; /* ms */
+    static final int MIN_WINDOW = 2;
+    static final int MAX_WINDOW = 64;
+    static final int DEFAULT_WINDOW = 5;
+    static final int DEFAULT_PIECE_DEADLINE = 1000; /* ms */
+    static final int MIN_PIECE_DEADLINE = 500; /* ms */
+    static final int RATE_INTERVAL = 1000; /* ms */
+    /* Longer intervals without reads are considered as a pause */
+    static final int MAX_IDLE_INTERVAL = 5000; /* ms */
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private long intervalStart = -1;
+    private long intervalBytes;
+    /* Bytes per second, 0 if unknown */
+    private long rate;
+
+    void onRead(long bytes, long now)
+    {
+        long elapsed = now - intervalStart;
+        /* Bytes of the first read after a pause aren't related to the interval */
+        if (intervalStart < 0 || elapsed > MAX_IDLE_INTERVAL) {
+            intervalStart = now;
+            intervalBytes = 0;
+            return;
+        }
+
+        intervalBytes += bytes;
+        if (elapsed < RATE_INTERVAL)
+            return;
+
+        long intervalRate = intervalBytes * 1000 / elapsed;
+        if (rate == 0)
+            rate = intervalRate;
+        else
+            rate = (long)(RATE_SMOOTHING * intervalRate + (1 - RATE_SMOOTHING) * rate);
+        intervalStart = now;
+        intervalBytes = 0;
+    }
+
+    long getRate()
+    {
+        return rate;
+    }
+
+    /*
+     * Number of pieces to prioritize after the pieces being read
+     */
+
+    int windowSize(int pieceLength)
+    {
+        if (rate == 0 || pieceLength <= 0)
+            return DEFAULT_WINDOW;
+
+        long bytes = rate * READ_AHEAD_TIME / 1000;
+        long pieces = (bytes + pieceLength - 1) / pieceLength;
+
+        return (int)Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, pieces));
+    }
+
+    /*
+     * Deadline of the piece at the given position in the window (starting from 0),
+     * bytesAhead is the distance from the read position to the piece start.
+     * It's half of the time left before the reader reaches the piece,
+     * so that the piece is downloaded in time even if the rate fluctuates
+     */
+
+    int deadline(int windowIndex, long bytesAhead)
+    {
+        if (rate == 0)
+            return DEFAULT_PIECE_DEADLINE * (windowIndex + 1);
+
+        long time = bytesAhead * 1000 / rate / 2;
+
+        return (int)Math.max(MIN_PIECE_DEADLINE, Math.min(READ_AHEAD_TIME, time));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import androidx.annotation.NonNull;
+
+import org.nanohttpd.NanoHTTPD;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Runs client connections of the stream server on a bounded thread pool
+ * instead of a new thread per connection. Connections that don't fit
+ * into the pool and the queue are closed. A worker serves all requests
+ * of a keep-alive connection until it's closed or there are no requests
+ * within the keep-alive timeout; idle workers are stopped after the idle timeout.
+ */
+
+class StreamAsyncRunner implements NanoHTTPD.AsyncRunner
+{
+    private final ThreadPoolExecutor exec;
+    private final Set<NanoHTTPD.ClientHandler> clients =
+            Collections.synchronizedSet(new HashSet<>());
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    StreamAsyncRunner(int maxClients, int maxQueued, long idleTimeout, @NonNull TimeUnit unit)
+    {
+        if (maxClients <= 0)
+            throw new IllegalArgumentException("Max clients must be greater than 0");
+        if (maxQueued <= 0)
+            throw new IllegalArgumentException("Max queued must be greater than 0");
+
+        AtomicInteger threadCount = new AtomicInteger();
+        exec = new ThreadPoolExecutor(maxClients, maxClients,
+                idleTimeout, unit,
+                new ArrayBlockingQueue<>(maxQueued),
+                (r) -> {
+                    Thread t = new Thread(r);
+                    t.setDaemon(true);
+                    t.setName("TorrentStreamServer worker #" + threadCount.incrementAndGet());
+                    return t;
+                });
+        exec.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void exec(NanoHTTPD.ClientHandler client)
+    {
+        clients.add(client);
+        try {
+            exec.execute(() -> {
+                activeCount.incrementAndGet();
+                try {
+                    client.run();
+                } finally {
+                    activeCount.decrementAndGet();
+                }
+            });
+            acceptedCount.incrementAndGet();
+
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            clients.remove(client);
+            client.close();
+        }
+    }
+
+    @Override
+    public void closed(NanoHTTPD.ClientHandler client)
+    {
+        clients.remove(client);
+    }
+
+    @Override
+    public void closeAll()
+    {
+        ArrayList<NanoHTTPD.ClientHandler> copy;
+        synchronized (clients) {
+            copy = new ArrayList<>(clients);
+        }
+        /* Also closes queued connections, they will exit immediately */
+        for (NanoHTTPD.ClientHandler client : copy)
+            client.close();
+    }
+
+    /*
+     * Number of connections being served
+     */
+
+    int getActiveCount()
+    {
+        return activeCount.get();
+    }
+
+    /*
+     * Number of connections waiting for a free worker
+     */
+
+    int getQueuedCount()
+    {
+        return exec.getQueue().size();
+    }
+
+    long getAcceptedCount()
+    {
+        return acceptedCount.get();
+    }
+
+    long getRejectedCount()
+    {
+        return rejectedCount.get();
+    }
+}
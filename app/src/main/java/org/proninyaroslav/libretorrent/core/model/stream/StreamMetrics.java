@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import androidx.annotation.NonNull;
+
+/*
+ * Collects metrics of the stream; written by the reading thread
+ * and read by the stats requests
+ */
+
+class StreamMetrics
+{
+    /* Shorter waits aren't noticeable because of the player buffer */
+    static final int STALL_THRESHOLD = 500; /* ms */
+
+    private final String torrentId;
+    private final int fileIndex;
+    private final long startTime;
+    private long firstByteTime = -1;
+    private long lastReadTime = -1;
+    private long pieceWaitTime;
+    private long readWaitTime;
+    private int stallCount;
+    private long stallTime;
+    private long bytesServed;
+    private long cacheHits;
+    private long cacheMisses;
+    private long fileReads;
+    private boolean closed;
+
+    StreamMetrics(@NonNull String torrentId, int fileIndex, long startTime)
+    {
+        this.torrentId = torrentId;
+        this.fileIndex = fileIndex;
+        this.startTime = startTime;
+    }
+
+    synchronized void onPieceWait(long time)
+    {
+        pieceWaitTime += time;
+        /* Waiting before the first byte is the startup delay */
+        if (firstByteTime >= 0 && time >= STALL_THRESHOLD) {
+            stallCount++;
+            stallTime += time;
+        }
+    }
+
+    synchronized void onReadWait(long time)
+    {
+        readWaitTime += time;
+    }
+
+    synchronized void onCacheHit()
+    {
+        cacheHits++;
+    }
+
+    synchronized void onCacheMiss()
+    {
+        cacheMisses++;
+    }
+
+    synchronized void onFileRead()
+    {
+        fileReads++;
+    }
+
+    synchronized void onServed(long bytes, long now)
+    {
+        if (firstByteTime < 0)
+            firstByteTime = now;
+        lastReadTime = now;
+        bytesServed += bytes;
+    }
+
+    synchronized void onClosed()
+    {
+        closed = true;
+    }
+
+    synchronized boolean isClosed()
+    {
+        return closed;
+    }
+
+    @NonNull
+    synchronized StreamStats getStats()
+    {
+        long throughput = 0;
+        long elapsed = lastReadTime - firstByteTime;
+        if (firstByteTime >= 0 && elapsed > 0)
+            throughput = bytesServed * 1000 / elapsed;
+
+        return new StreamStats(torrentId, fileIndex, startTime,
+                (firstByteTime < 0 ? -1 : firstByteTime - startTime),
+                pieceWaitTime, readWaitTime, stallCount, stallTime,
+                bytesServed, throughput, cacheHits, cacheMisses, fileReads, closed);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import androidx.annotation.NonNull;
+
+/*
+ * Quality of service metrics of the stream. Times are in milliseconds
+ */
+
+public class StreamStats
+{
+    public final String torrentId;
+    public final int fileIndex;
+    public final long startTime;
+    /* -1 if no bytes have been served yet */
+    public final long timeToFirstByte;
+    /* Time blocked waiting for pieces to be downloaded */
+    public final long pieceWaitTime;
+    /* Time blocked waiting for downloaded pieces to be read */
+    public final long readWaitTime;
+    /* Waits for pieces after the playback has started */
+    public final int stallCount;
+    public final long stallTime;
+    public final long bytesServed;
+    /* Bytes per second since the first byte */
+    public final long throughput;
+    public final long cacheHits;
+    public final long cacheMisses;
+    /* Reads served directly from the file */
+    public final long fileReads;
+    /* -1 if the cache hasn't been accessed */
+    public final double cacheHitRate;
+    public final boolean closed;
+
+    public StreamStats(@NonNull String torrentId, int fileIndex, long startTime,
+                       long timeToFirstByte, long pieceWaitTime, long readWaitTime,
+                       int stallCount, long stallTime, long bytesServed, long throughput,
+                       long cacheHits, long cacheMisses, long fileReads, boolean closed)
+    {
+        this.torrentId = torrentId;
+        this.fileIndex = fileIndex;
+        this.startTime = startTime;
+        this.timeToFirstByte = timeToFirstByte;
+        this.pieceWaitTime = pieceWaitTime;
+        this.readWaitTime = readWaitTime;
+        this.stallCount = stallCount;
+        this.stallTime = stallTime;
+        this.bytesServed = bytesServed;
+        this.throughput = throughput;
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+        this.fileReads = fileReads;
+        this.closed = closed;
+
+        long cacheReads = cacheHits + cacheMisses;
+        cacheHitRate = (cacheReads == 0 ? -1 : (double)cacheHits / cacheReads);
+    }
+
+    @NonNull
+    @Override
+    public String toString()
+    {
+        return "StreamStats{" +
+                "torrentId='" + torrentId + '\'' +
+                ", fileIndex=" + fileIndex +
+                ", startTime=" + startTime +
+                ", timeToFirstByte=" + timeToFirstByte +
+                ", pieceWaitTime=" + pieceWaitTime +
+                ", readWaitTime=" + readWaitTime +
+                ", stallCount=" + stallCount +
+                ", stallTime=" + stallTime +
+                ", bytesServed=" + bytesServed +
+                ", throughput=" + throughput +
+                ", cacheHits=" + cacheHits +
+                ", cacheMisses=" + cacheMisses +
+                ", fileReads=" + fileReads +
+                ", cacheHitRate=" + cacheHitRate +
+                ", closed=" + closed +
+                '}';
+    }
+}
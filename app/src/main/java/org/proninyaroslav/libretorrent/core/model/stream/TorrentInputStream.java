@@ -20,6 +20,8 @@
 
 package org.proninyaroslav.libretorrent.core.model.stream;
 
+import android.util.Log;
+
 import androidx.annotation.NonNull;
 
 import com.sun.jna.Pointer;
@@ -29,8 +31,21 @@ import org.proninyaroslav.libretorrent.core.model.data.ReadPieceInfo;
 import org.proninyaroslav.libretorrent.core.model.session.TorrentDownload;
 import org.proninyaroslav.libretorrent.core.model.session.TorrentSession;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReentrantLock;
 
 /*
@@ -50,23 +65,42 @@ import java.util.concurrent.locks.ReentrantLock;
 
 public class TorrentInputStream extends InputStream
 {
+    private static final String TAG = TorrentInputStream.class.getSimpleName();
+
     public static final int EOF = -1;
+    private static final int REPRIORITIZE_INTERVAL = 1000; /* ms */
+    /* Have piece is rechecked in case the piece finished alert is dropped */
+    private static final int PIECE_CHECK_INTERVAL = 5000; /* ms */
+    private static final int READ_PIECE_TIMEOUT = 30000; /* ms */
 
     private TorrentSession session;
     private TorrentStream stream;
-    private ReadSession readSession;
+    private PieceCache pieceCache;
     private long filePos, fileStart, eof;
-    private byte[] cacheBuf;
-    private int cachePieceIndex = -1;
     private boolean stopped;
-    private static ReentrantLock lock = new ReentrantLock();
-
-    private class ReadSession
-    {
-        private int countLatch;
-        private Piece[] piecesForReading;
-        private byte[] buf;
-    }
+    /*
+     * Serializes reads of this stream only; reads of other streams
+     * (including streams of the same file) run concurrently.
+     * The stop flag and the pending futures are guarded by this
+     */
+    private final ReentrantLock readLock = new ReentrantLock();
+    /* Guarded by readLock */
+    private final ReadAheadPolicy readAhead = new ReadAheadPolicy();
+    private int prioritizedPiece = -1;
+    private long prioritizedTime;
+    /* Pieces that are pre-read into the cache, guarded by this */
+    private int readAheadFirst = -1, readAheadLast = -1;
+    private final HashSet<Integer> preReading = new HashSet<>();
+    /*
+     * Null if the file can't be read directly, guarded by this.
+     * Downloaded pieces are read from the file, so the piece cache and
+     * the pre-read are used only if the file can't be read directly
+     */
+    private File file;
+    private FileChannel fileChannel;
+    /* Cancelled when the stream is closed */
+    private final HashSet<CompletableFuture<Void>> pendingFutures = new HashSet<>();
+    private final StreamMetrics metrics;
 
     private static class Piece
     {
@@ -74,7 +108,14 @@ public class TorrentInputStream extends InputStream
         int readLength;
         int readOffset;
         int bufIndex;
-        boolean cache = false;
+        /*
+         * Filled in the alert thread and copied to the read buffer
+         * only after the read is completed. Either the whole piece
+         * from the cache pool or the read range only
+         */
+        byte[] data;
+        boolean wholePiece;
+        int size;
 
         Piece(int index)
         {
@@ -94,10 +135,15 @@ public class TorrentInputStream extends InputStream
         }
     }
 
-    public TorrentInputStream(@NonNull TorrentSession session, @NonNull TorrentStream stream)
+    public TorrentInputStream(@NonNull TorrentSession session,
+                              @NonNull TorrentStream stream,
+                              @NonNull PieceCache pieceCache)
     {
         this.session = session;
         this.stream = stream;
+        this.pieceCache = pieceCache;
+        metrics = new StreamMetrics(stream.torrentId, stream.selectedFileIndex,
+                                    System.currentTimeMillis());
         TorrentDownload task = session.getTask(stream.torrentId);
         if (task == null)
             throw new NullPointerException("task " + stream.torrentId + " is null");
@@ -114,52 +160,193 @@ public class TorrentInputStream extends InputStream
         fileStart = filePos + 1;
         eof = filePos + stream.fileSize;
 
+        file = task.getFile(stream.selectedFileIndex);
+
         session.addListener(listener);
-        task.setInterestedPieces(stream, stream.firstFilePiece, 1);
     }
 
     @Override
     protected void finalize() throws Throwable
     {
+        stop();
+
+        super.finalize();
+    }
+
+    private void stop()
+    {
+        ArrayList<CompletableFuture<Void>> futures;
         synchronized (this) {
             stopped = true;
             if (session != null)
                 session.removeListener(listener);
             session = null;
-            notifyAll();
+            preReading.clear();
+            closeFile();
+            futures = new ArrayList<>(pendingFutures);
+            pendingFutures.clear();
         }
 
-        super.finalize();
+        for (CompletableFuture<Void> future : futures)
+            future.cancel(false);
+        metrics.onClosed();
     }
 
-    private synchronized boolean waitForPiece(TorrentDownload task, int pieceIndex)
+    @NonNull
+    public StreamStats getStats()
     {
-        while (!Thread.currentThread().isInterrupted() && !stopped) {
-            try {
-                if (task.havePiece(pieceIndex))
-                    return true;
-                wait();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+        return metrics.getStats();
+    }
+
+    public boolean isClosed()
+    {
+        return metrics.isClosed();
+    }
+
+    /*
+     * Waits for the future, if it isn't completed within the timeout,
+     * it stays registered. Returns false if the stream is closed
+     * or the thread is interrupted
+     */
+
+    private boolean await(CompletableFuture<Void> future, long timeout)
+            throws IOException, TimeoutException
+    {
+        synchronized (this) {
+            if (stopped) {
+                future.cancel(false);
+                return false;
             }
+            pendingFutures.add(future);
         }
 
-        return false;
+        try {
+            future.get(timeout, TimeUnit.MILLISECONDS);
+
+            return true;
+
+        } catch (CancellationException e) {
+            return false;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+
+            return false;
+
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+
+        } finally {
+            synchronized (this) {
+                pendingFutures.remove(future);
+            }
+        }
     }
 
-    private synchronized boolean waitForReadPieces()
+    private boolean waitForPiece(TorrentDownload task, int pieceIndex) throws IOException
     {
-        while (!Thread.currentThread().isInterrupted() && !stopped) {
+        CompletableFuture<Void> future = task.waitForPiece(pieceIndex);
+        while (true) {
             try {
-                if (readSession != null && readSession.countLatch <= 0)
+                return await(future, PIECE_CHECK_INTERVAL);
+
+            } catch (TimeoutException e) {
+                if (task.havePiece(pieceIndex)) {
+                    future.cancel(false);
                     return true;
-                wait();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+                }
             }
         }
+    }
 
-        return false;
+    /*
+     * Reads the pieces to the buffer, a piece is read once it's downloaded.
+     * Returns false if the stream is closed
+     */
+
+    private boolean readPieces(TorrentDownload task, Piece[] pieces, byte[] b,
+                               boolean useCache) throws IOException
+    {
+        ArrayList<CompletableFuture<Void>> futures = new ArrayList<>(pieces.length);
+        boolean cache = useCache && stream.pieceLength <= pieceCache.getMaxSize();
+        try {
+            long pieceWaitTime = 0;
+            for (Piece piece : pieces) {
+                long start = System.currentTimeMillis();
+                boolean downloaded = waitForPiece(task, piece.index);
+                pieceWaitTime += System.currentTimeMillis() - start;
+                if (!downloaded)
+                    return false;
+                /* Async piece reading */
+                piece.wholePiece = cache;
+                piece.data = (cache ?
+                              pieceCache.acquireBuffer(stream.pieceLength) :
+                              new byte[piece.readLength]);
+                futures.add(task.readPiece(piece.index, (info) -> copyPiece(info, piece)));
+            }
+            metrics.onPieceWait(pieceWaitTime);
+
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < futures.size(); i++) {
+                if (!await(futures.get(i), READ_PIECE_TIMEOUT))
+                    return false;
+            }
+            metrics.onReadWait(System.currentTimeMillis() - start);
+
+            for (Piece piece : pieces) {
+                if (piece.wholePiece) {
+                    System.arraycopy(piece.data, piece.readOffset, b,
+                                     piece.bufIndex, piece.readLength);
+                    /* Serve the next reads of the piece from the cache */
+                    pieceCache.put(stream.torrentId, piece.index, piece.data, piece.size);
+                    piece.data = null;
+                } else {
+                    System.arraycopy(piece.data, 0, b, piece.bufIndex, piece.readLength);
+                }
+            }
+
+            return true;
+
+        } catch (TimeoutException e) {
+            throw new IOException("Timeout reading pieces of " + stream.torrentId);
+
+        } catch (IOException e) {
+            /* Reading fails if the torrent is paused */
+            task.resume();
+            throw e;
+
+        } finally {
+            for (int i = 0; i < futures.size(); i++) {
+                CompletableFuture<Void> future = futures.get(i);
+                future.cancel(false);
+                /* The buffer is still written if the callback is running */
+                Piece piece = pieces[i];
+                if (piece.wholePiece && piece.data != null && future.isDone())
+                    pieceCache.releaseBuffer(piece.data);
+            }
+        }
+    }
+
+    /*
+     * Called in the alert thread, copies the piece to the buffer
+     * acquired by the reading thread
+     */
+
+    private void copyPiece(ReadPieceInfo info, Piece piece)
+    {
+        if (piece.readOffset + piece.readLength > info.size)
+            throw new IllegalStateException("Piece " + piece.index + " is shorter than expected");
+
+        Pointer ptr = new Pointer(info.bufferPtr);
+        if (piece.wholePiece) {
+            if (info.size > piece.data.length)
+                throw new IllegalStateException("Piece " + piece.index + " is longer than expected");
+            ptr.read(0, piece.data, 0, info.size);
+            piece.size = info.size;
+        } else {
+            ptr.read(piece.readOffset, piece.data, 0, piece.readLength);
+        }
     }
 
     /*
@@ -177,10 +364,10 @@ public class TorrentInputStream extends InputStream
         return pieceSize - (int)(pieceEnd - pos);
     }
 
-    private void readFromCache(Piece piece, byte[] b)
+    private boolean readFromCache(Piece piece, byte[] b)
     {
-        System.arraycopy(cacheBuf, piece.readOffset, b,
-                         piece.bufIndex, piece.readLength);
+        return pieceCache.read(stream.torrentId, piece.index, piece.readOffset,
+                               b, piece.bufIndex, piece.readLength);
     }
 
     /*
@@ -192,71 +379,193 @@ public class TorrentInputStream extends InputStream
         return 0x00 << 24 | b & 0xff;
     }
 
-    @Override
-    public int read() throws IOException
+    /*
+     * Prioritizes the pieces being read and the read-ahead window after them,
+     * and pre-reads the downloaded pieces of the window into the cache.
+     * Repeated within the same piece no more than once per interval
+     */
+
+    private void updateReadAhead(TorrentDownload task, int firstPiece, int numPieces)
     {
-        lock.lock();
+        long now = System.currentTimeMillis();
+        if (firstPiece == prioritizedPiece && now - prioritizedTime < REPRIORITIZE_INTERVAL)
+            return;
+        prioritizedPiece = firstPiece;
+        prioritizedTime = now;
 
-        try {
-            if (session == null)
-                throw new IOException("Torrent session is null");
+        int lastPiece = Math.min(firstPiece + numPieces - 1 + readAhead.windowSize(stream.pieceLength),
+                                 stream.lastFilePiece);
+        if (lastPiece < firstPiece)
+            return;
 
-            TorrentDownload task = session.getTask(stream.torrentId);
-            if (task == null)
-                throw new IOException("task " + stream.torrentId + " is null");
+        int[] deadlines = new int[lastPiece - firstPiece + 1];
+        for (int i = numPieces; i < deadlines.length; i++) {
+            /* Pieces being read have zero deadline */
+            long bytesAhead = (long)(firstPiece + i - stream.firstFilePiece) * stream.pieceLength - filePos;
+            deadlines[i] = readAhead.deadline(i - numPieces, bytesAhead);
+        }
+        task.setPiecesDeadlines(stream, firstPiece, deadlines);
+
+        /* Pre-read no more than half of the cache, otherwise pieces evict each other */
+        long maxPreRead = pieceCache.getMaxSize() / 2 / stream.pieceLength;
+        int preReadFirst = firstPiece + numPieces;
+        int preReadLast = (int)Math.min(lastPiece, preReadFirst + maxPreRead - 1);
+        setReadAheadWindow(preReadFirst, preReadLast);
+        for (int p = preReadFirst; p <= preReadLast; p++)
+            preRead(task, p);
+    }
 
-            /* EOF check */
-            if (filePos == eof) {
-                cacheBuf = null;
-                return EOF;
-            }
+    private synchronized void setReadAheadWindow(int first, int last)
+    {
+        readAheadFirst = first;
+        readAheadLast = last;
+        Iterator<Integer> it = preReading.iterator();
+        while (it.hasNext()) {
+            int piece = it.next();
+            if (piece < first || piece > last)
+                it.remove();
+        }
+    }
 
-            /* Pieces definition that need to be read */
-            int p = stream.bytesToPieceIndex(filePos + 1);
+    /*
+     * Pieces of the window that are finished later are pre-read on finish
+     */
 
-            task.setInterestedPieces(stream, p, 1);
+    private void pieceFinished(int piece)
+    {
+        TorrentSession s;
+        synchronized (this) {
+            if (stopped || piece < readAheadFirst || piece > readAheadLast)
+                return;
+            s = session;
+        }
 
-            readSession = new ReadSession();
-            readSession.piecesForReading = new Piece[1];
-            readSession.buf = new byte[1];
-            readSession.countLatch = 1;
+        TorrentDownload task = (s == null ? null : s.getTask(stream.torrentId));
+        if (task != null)
+            preRead(task, piece);
+    }
 
-            Piece piece = new Piece(p);
-            piece.readOffset = filePosToPiecePos(p, filePos);
-            piece.readLength = 1;
-            piece.bufIndex = 0;
+    /*
+     * The buffer is acquired in the calling thread, the alert thread only
+     * copies the piece to it, as the piece buffer is freed with the alert
+     */
 
-            /* Check cache */
-            if (p == cachePieceIndex) {
-                readFromCache(piece, readSession.buf);
-                filePos++;
+    private void preRead(TorrentDownload task, int piece)
+    {
+        if (stream.pieceLength > pieceCache.getMaxSize() ||
+            pieceCache.contains(stream.torrentId, piece) ||
+            !task.havePiece(piece))
+            return;
 
-                return toUnsignedByte(readSession.buf[0]);
-            }
-            piece.cache = true;
-            readSession.piecesForReading[0] = piece;
+        synchronized (this) {
+            if (file != null)
+                return;
+            if (stopped || piece < readAheadFirst || piece > readAheadLast ||
+                !preReading.add(piece))
+                return;
+        }
+        byte[] pieceBuf = pieceCache.acquireBuffer(stream.pieceLength);
+        task.readPiece(piece, (info) -> {
+            if (info.size > pieceBuf.length)
+                throw new IllegalStateException("Piece " + piece + " is longer than expected");
+            new Pointer(info.bufferPtr).read(0, pieceBuf, 0, info.size);
+            pieceCache.put(stream.torrentId, piece, pieceBuf, info.size);
+        }).whenComplete((v, e) -> {
+            /* Not put to the cache if the read is failed or cancelled */
+            if (e != null)
+                pieceCache.releaseBuffer(pieceBuf);
+            preReadFinished(piece);
+        });
+    }
 
-            if (!waitForPiece(task, p))
-                return EOF;
-            /* Async piece reading */
-            task.readPiece(p);
+    private synchronized void preReadFinished(int piece)
+    {
+        preReading.remove(piece);
+    }
 
-            if (!waitForReadPieces())
-                return EOF;
-            filePos++;
+    private synchronized boolean canReadFile()
+    {
+        return file != null;
+    }
 
-            return toUnsignedByte(readSession.buf[0]);
+    private synchronized FileChannel openFile() throws IOException
+    {
+        if (stopped || file == null)
+            return null;
+        if (fileChannel == null)
+            fileChannel = new RandomAccessFile(file, "r").getChannel();
 
-        } finally {
-            readSession = null;
-            lock.unlock();
+        return fileChannel;
+    }
+
+    private synchronized void closeFile()
+    {
+        if (fileChannel == null)
+            return;
+        try {
+            fileChannel.close();
+
+        } catch (IOException e) {
+            /* Ignore */
+        }
+        fileChannel = null;
+    }
+
+    /*
+     * If all pieces of the range are downloaded and verified, reads the range
+     * directly from the file, bypassing the read piece alert and the piece cache.
+     * Returns false if the range must be read by pieces
+     */
+
+    private boolean readFromFile(TorrentDownload task, int firstPiece, int lastPiece,
+                                 byte[] b, int off, int len)
+    {
+        for (int p = firstPiece; p <= lastPiece; p++) {
+            if (!task.havePiece(p))
+                return false;
         }
+
+        try {
+            FileChannel channel = openFile();
+            if (channel == null)
+                return false;
+
+            ByteBuffer dst = ByteBuffer.wrap(b, off, len);
+            long pos = filePos - fileStart + 1;
+            while (dst.hasRemaining()) {
+                int n = channel.read(dst, pos);
+                if (n < 0)
+                    return false;
+                pos += n;
+            }
+
+            return true;
+
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, "Unable to read " + file + ", fallback to reading pieces: " +
+                    Log.getStackTraceString(e));
+            synchronized (this) {
+                closeFile();
+                file = null;
+            }
+
+            return false;
+        }
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+
+        return (n == EOF ? EOF : toUnsignedByte(b[0]));
     }
 
     @Override
     public int read(@NonNull byte[] b, int off, int len) throws IOException
     {
-        lock.lock();
+        readLock.lock();
 
         try {
             if (off < 0 || len < 0 || len > b.length - off)
@@ -272,28 +581,30 @@ public class TorrentInputStream extends InputStream
                 throw new IOException("Task " + stream.torrentId + " is null");
 
             /* EOF check */
-            if (filePos == eof) {
-                cacheBuf = null;
+            if (filePos == eof)
                 return EOF;
-            }
             if (filePos + len > eof)
                 len = (int)(eof - filePos);
 
-
             /* Pieces definition that need to be read */
             int firstPiece = stream.bytesToPieceIndex(filePos + 1);
             int lastPiece = stream.bytesToPieceIndex(filePos + len);
             int numPieces = lastPiece - firstPiece + 1;
 
-            task.setInterestedPieces(stream, firstPiece, numPieces);
+            updateReadAhead(task, firstPiece, numPieces);
+
+            if (readFromFile(task, firstPiece, lastPiece, b, off, len)) {
+                metrics.onFileRead();
+                onServed(len);
 
-            readSession = new ReadSession();
-            readSession.piecesForReading = new Piece[numPieces];
-            readSession.buf = b;
-            readSession.countLatch = numPieces;
+                return len;
+            }
+            boolean useCache = !canReadFile();
 
+            Piece[] missed = new Piece[numPieces];
+            int numMissed = 0;
             int bufIndex = off;
-            for (int p = firstPiece, i = 0; p <= lastPiece; p++, i++) {
+            for (int p = firstPiece; p <= lastPiece; p++) {
                 int pieceSize;
                 if (p == stream.lastFilePiece)
                     pieceSize = stream.lastFilePieceSize;
@@ -302,7 +613,6 @@ public class TorrentInputStream extends InputStream
 
                 Piece piece = new Piece(p);
                 piece.bufIndex = bufIndex;
-                piece.cache = p == lastPiece;
 
                 if (p == firstPiece)
                     piece.readOffset = filePosToPiecePos(firstPiece, filePos);
@@ -320,37 +630,41 @@ public class TorrentInputStream extends InputStream
                 bufIndex += piece.readLength;
 
                 /* Check cache */
-                if (p == cachePieceIndex) {
-                    readFromCache(piece, b);
-                    /* Exit if there are no other pieces except cached */
-                    if (numPieces == 1) {
-                        filePos += len;
-
-                        return len;
-                    }
+                if (!useCache) {
+                    missed[numMissed++] = piece;
+                } else if (readFromCache(piece, b)) {
+                    metrics.onCacheHit();
+                } else {
+                    metrics.onCacheMiss();
+                    missed[numMissed++] = piece;
                 }
+            }
+            /* Exit if all pieces are cached */
+            if (numMissed == 0) {
+                onServed(len);
 
-                readSession.piecesForReading[i] = piece;
-
-                if (!waitForPiece(task, p))
-                    return EOF;
-                /* Async pieces reading */
-                task.readPiece(p);
+                return len;
             }
 
-            /* Wait for pieces reading */
-            if (!waitForReadPieces())
+            if (!readPieces(task, Arrays.copyOf(missed, numMissed), b, useCache))
                 return EOF;
-            filePos += len;
+            onServed(len);
 
             return len;
 
         } finally {
-            readSession = null;
-            lock.unlock();
+            readLock.unlock();
         }
     }
 
+    private void onServed(int len)
+    {
+        long now = System.currentTimeMillis();
+        filePos += len;
+        readAhead.onRead(len, now);
+        metrics.onServed(len, now);
+    }
+
     @Override
     public int read(@NonNull byte[] b) throws IOException
     {
@@ -360,13 +674,7 @@ public class TorrentInputStream extends InputStream
     @Override
     public void close() throws IOException
     {
-        synchronized (this) {
-            stopped = true;
-            if (session != null)
-                session.removeListener(listener);
-            session = null;
-            notifyAll();
-        }
+        stop();
 
         super.close();
     }
@@ -374,7 +682,7 @@ public class TorrentInputStream extends InputStream
     @Override
     public long skip(long n)
     {
-        lock.lock();
+        readLock.lock();
 
         try {
             if (n <= 0)
@@ -391,13 +699,13 @@ public class TorrentInputStream extends InputStream
             if (session != null) {
                 TorrentDownload task = session.getTask(stream.torrentId);
                 if (task != null)
-                    task.setInterestedPieces(stream, stream.bytesToPieceIndex(filePos + 1), 1);
+                    updateReadAhead(task, stream.bytesToPieceIndex(filePos + 1), 1);
             }
 
             return n;
 
         } finally {
-            lock.unlock();
+            readLock.unlock();
         }
     }
 
@@ -407,65 +715,15 @@ public class TorrentInputStream extends InputStream
         return false;
     }
 
-    private TorrentEngineListener listener = new TorrentEngineListener()
+    private final TorrentEngineListener listener = new TorrentEngineListener()
     {
-        @Override
-        public void onReadPiece(@NonNull String id, ReadPieceInfo info)
-        {
-            if (!stream.torrentId.equals(id))
-                return;
-
-            readPiece(info);
-        }
-
         @Override
         public void onPieceFinished(@NonNull String id, int piece)
         {
             if (!stream.torrentId.equals(id))
                 return;
 
-            pieceFinished();
+            pieceFinished(piece);
         }
     };
-
-    private synchronized void pieceFinished()
-    {
-        notifyAll();
-    }
-
-    private synchronized void readPiece(ReadPieceInfo info)
-    {
-        if (readSession == null)
-            return;
-
-        Piece piece = null;
-        for (Piece p : readSession.piecesForReading) {
-            if (p.index == info.piece) {
-                piece = p;
-                break;
-            }
-        }
-        if (readSession.countLatch > 0 && piece != null && readSession.buf != null) {
-            try {
-                if (info.err != null) {
-                    TorrentDownload task = session.getTask(stream.torrentId);
-                    if (task != null)
-                        task.resume();
-                    return;
-                }
-                Pointer ptr = new Pointer(info.bufferPtr);
-                if (piece.cache) {
-                    cacheBuf = new byte[info.size];
-                    ptr.read(0, cacheBuf, 0, info.size);
-                    cachePieceIndex = piece.index;
-                    readFromCache(piece, readSession.buf);
-                } else {
-                    ptr.read(piece.readOffset, readSession.buf, piece.bufIndex, piece.readLength);
-                }
-            } finally {
-                --readSession.countLatch;
-                notifyAll();
-            }
-        }
-    }
-}
\ No newline at end of file
+}
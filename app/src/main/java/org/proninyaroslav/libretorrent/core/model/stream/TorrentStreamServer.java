@@ -24,16 +24,24 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import com.google.gson.Gson;
+
 import org.nanohttpd.NanoHTTPD;
 import org.proninyaroslav.libretorrent.core.model.TorrentEngine;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import static org.nanohttpd.NanoHTTPD.Response.Status.BAD_REQUEST;
 import static org.nanohttpd.NanoHTTPD.Response.Status.FORBIDDEN;
@@ -45,7 +53,9 @@ import static org.nanohttpd.NanoHTTPD.Response.Status.RANGE_NOT_SATISFIABLE;
 
 /*
  * The server that allows to stream selected file from a torrent and to which a specific address is assigned.
- * Supports partial content and DLNA (for some file formats)
+ * Supports partial content (including multiple and suffix ranges), HEAD requests
+ * and DLNA (for some file formats).
+ * Metrics of the open streams are available in JSON format, URL: http://'hostname':'port'/stats
  */
 
 public class TorrentStreamServer extends NanoHTTPD
@@ -53,6 +63,16 @@ public class TorrentStreamServer extends NanoHTTPD
     private static final String TAG = TorrentStreamServer.class.getSimpleName();
 
     private static final String MIME_OCTET_STREAM = "application/octet-stream";
+    private static final String MIME_JSON = "application/json";
+    public static final int DEFAULT_MAX_CLIENTS = 8;
+    public static final int DEFAULT_MAX_QUEUED_CLIENTS = 16;
+    private static final int READ_TIMEOUT = NanoHTTPD.SOCKET_READ_TIMEOUT; /* ms */
+    /*
+     * Keep-alive connections are closed if there are no requests,
+     * shorter than the read timeout to release the workers sooner
+     */
+    private static final int KEEP_ALIVE_TIMEOUT = 2000; /* ms */
+    private static final long WORKER_IDLE_TIMEOUT = 60; /* sec */
 
     private static HashMap<String, DLNAFileType> DLNA_FILE_TYPES;
     static {
@@ -63,10 +83,24 @@ public class TorrentStreamServer extends NanoHTTPD
     }
 
     private TorrentEngine engine;
+    private final StreamAsyncRunner asyncRunner;
+    /* Guarded by itself */
+    private final ArrayList<TorrentInputStream> openStreams = new ArrayList<>();
 
     public TorrentStreamServer(@NonNull String host, int port)
+    {
+        this(host, port, DEFAULT_MAX_CLIENTS, DEFAULT_MAX_QUEUED_CLIENTS);
+    }
+
+    public TorrentStreamServer(@NonNull String host, int port,
+                               int maxClients, int maxQueuedClients)
     {
         super(host, port);
+
+        asyncRunner = new StreamAsyncRunner(maxClients, maxQueuedClients,
+                                            WORKER_IDLE_TIMEOUT, TimeUnit.SECONDS);
+        setAsyncRunner(asyncRunner);
+        setKeepAliveTimeout(KEEP_ALIVE_TIMEOUT);
     }
 
     public void start(@NonNull Context appContext) throws IOException
@@ -75,17 +109,113 @@ public class TorrentStreamServer extends NanoHTTPD
 
         engine = TorrentEngine.getInstance(appContext);
 
-        super.start();
+        super.start(READ_TIMEOUT);
     }
 
     @Override
     public void stop()
     {
         super.stop();
+        synchronized (openStreams) {
+            openStreams.clear();
+        }
 
         Log.i(TAG, "Stop " + TAG);
     }
 
+    /*
+     * Number of connections being served
+     */
+
+    public int getActiveConnections()
+    {
+        return asyncRunner.getActiveCount();
+    }
+
+    /*
+     * Number of connections waiting for a free worker
+     */
+
+    public int getQueuedConnections()
+    {
+        return asyncRunner.getQueuedCount();
+    }
+
+    public long getAcceptedConnections()
+    {
+        return asyncRunner.getAcceptedCount();
+    }
+
+    /*
+     * Number of connections closed because the server was busy
+     */
+
+    public long getRejectedConnections()
+    {
+        return asyncRunner.getRejectedCount();
+    }
+
+    /*
+     * Returns metrics of the streams that aren't closed yet
+     */
+
+    @NonNull
+    public List<StreamStats> getStreamStats()
+    {
+        ArrayList<StreamStats> stats = new ArrayList<>();
+        synchronized (openStreams) {
+            removeClosedStreams();
+            for (TorrentInputStream is : openStreams)
+                stats.add(is.getStats());
+        }
+
+        return stats;
+    }
+
+    private TorrentInputStream openStream(TorrentStream stream)
+    {
+        TorrentInputStream is = engine.getTorrentInputStream(stream);
+        synchronized (openStreams) {
+            removeClosedStreams();
+            openStreams.add(is);
+        }
+
+        return is;
+    }
+
+    private void removeClosedStreams()
+    {
+        Iterator<TorrentInputStream> it = openStreams.iterator();
+        while (it.hasNext()) {
+            if (it.next().isClosed())
+                it.remove();
+        }
+    }
+
+    private static class ServerStats
+    {
+        int activeConnections;
+        int queuedConnections;
+        long acceptedConnections;
+        long rejectedConnections;
+        List<StreamStats> streams;
+    }
+
+    private Response handleStats()
+    {
+        ServerStats stats = new ServerStats();
+        stats.activeConnections = getActiveConnections();
+        stats.queuedConnections = getQueuedConnections();
+        stats.acceptedConnections = getAcceptedConnections();
+        stats.rejectedConnections = getRejectedConnections();
+        stats.streams = getStreamStats();
+
+        Response res = newFixedLengthResponse(OK, MIME_JSON, new Gson().toJson(stats));
+        res.addHeader("Cache-Control", "no-cache");
+
+        return res;
+    }
+
     /*
      * URL format: http://'hostname':'port'/stream?file='file_index'&torrent='torrent_hash'
      */
@@ -126,6 +256,9 @@ public class TorrentStreamServer extends NanoHTTPD
         if (engine == null)
             return newFixedLengthResponse(NOT_FOUND, "", "");
 
+        if (httpSession.getUri().equals("/stats"))
+            return handleStats();
+
         if (!httpSession.getUri().equals("/stream"))
             return newFixedLengthResponse(BAD_REQUEST, "", "");
 
@@ -148,27 +281,11 @@ public class TorrentStreamServer extends NanoHTTPD
         }
 
         Map<String, String> header = httpSession.getHeaders();
+        /* Only headers are sent, the stream isn't opened */
+        boolean headOnly = httpSession.getMethod() == Method.HEAD;
         try {
             Response res;
             String etag = stream.id;
-            long startFrom = 0;
-            long endAt = -1;
-            String range = header.get("range");
-
-            if (range != null) {
-                if (range.startsWith("bytes=")) {
-                    range = range.substring("bytes=".length());
-                    int minus = range.indexOf('-');
-                    try {
-                        if (minus > 0) {
-                            startFrom = Long.parseLong(range.substring(0, minus));
-                            endAt = Long.parseLong(range.substring(minus + 1));
-                        }
-                    } catch (NumberFormatException ignored) {
-
-                    }
-                }
-            }
 
             /*
              * Get if-range header. If present, it must match etag or else we
@@ -181,72 +298,64 @@ public class TorrentStreamServer extends NanoHTTPD
             boolean headerIfNoneMatchPresentAndMatching = ifNoneMatch != null &&
                     ("*".equals(ifNoneMatch) || ifNoneMatch.equals(etag));
 
-            if (headerIfRangeMissingOrMatching && range != null &&
-                startFrom >= 0 && startFrom < stream.fileSize) {
+            String range = header.get("range");
+            List<ByteRange> ranges = null;
+            if (range != null && headerIfRangeMissingOrMatching)
+                ranges = ByteRange.parse(range, stream.fileSize);
+
+            if (ranges != null && ranges.isEmpty()) {
+                /*
+                 * Return the size of the file
+                 * 4xx responses are not trumped by if-none-match
+                 */
+                res = newFixedLengthResponse(RANGE_NOT_SATISFIABLE, NanoHTTPD.MIME_PLAINTEXT, "");
+                res.addHeader("Content-Range", "bytes */" + stream.fileSize);
+                res.addHeader("ETag", etag);
+
+            } else if (headerIfNoneMatchPresentAndMatching) {
                 /*
-                 * Range request that matches current etag
-                 * and the startFrom of the range is satisfiable
+                 * Request that matches current etag would return
+                 * the same content, respond with not-modified
                  */
-                if (headerIfNoneMatchPresentAndMatching) {
-                    /*
-                     * Range request that matches current etag
-                     * and the startFrom of the range is satisfiable
-                     * would return range from file respond with not-modified
-                     */
-                    res = newFixedLengthResponse(NOT_MODIFIED, MIME_OCTET_STREAM, "");
-                    res.addHeader("ETag", etag);
-
-                } else {
-                    if (endAt < 0)
-                        endAt = stream.fileSize - 1;
-                    long newLen = endAt - startFrom + 1;
-                    if (newLen < 0)
-                        newLen = 0;
-
-                    TorrentInputStream is = engine.getTorrentInputStream(stream);
-                    is.skip(startFrom);
-
-                    res = newFixedLengthResponse(PARTIAL_CONTENT, MIME_OCTET_STREAM, is, newLen);
-                    res.addHeader("Accept-Ranges", "bytes");
-                    res.addHeader("Content-Length", "" + newLen);
-                    res.addHeader("Content-Range", "bytes " + startFrom + "-" + endAt + "/" + stream.fileSize);
-                    res.addHeader("ETag", etag);
-                    res.addHeader("Content-Disposition", "inline; filename=" + stream.id);
+                res = newFixedLengthResponse(NOT_MODIFIED, MIME_OCTET_STREAM, "");
+                res.addHeader("ETag", etag);
+
+            } else if (ranges != null && ranges.size() == 1) {
+                ByteRange r = ranges.get(0);
+                InputStream is = null;
+                if (!headOnly) {
+                    TorrentInputStream torrentStream = openStream(stream);
+                    torrentStream.skip(r.start);
+                    is = torrentStream;
                 }
+                res = newFixedLengthResponse(PARTIAL_CONTENT, MIME_OCTET_STREAM, is, r.length());
+                res.addHeader("Accept-Ranges", "bytes");
+                res.addHeader("Content-Length", "" + r.length());
+                res.addHeader("Content-Range", r.toContentRange(stream.fileSize));
+                res.addHeader("ETag", etag);
+                res.addHeader("Content-Disposition", "inline; filename=" + stream.id);
+
+            } else if (ranges != null) {
+                String boundary = UUID.randomUUID().toString();
+                long len = MultipartRangesInputStream.contentLength(ranges, boundary,
+                        MIME_OCTET_STREAM, stream.fileSize);
+                InputStream is = null;
+                if (!headOnly)
+                    is = new MultipartRangesInputStream(openStream(stream), ranges, boundary,
+                            MIME_OCTET_STREAM, stream.fileSize);
+                res = newFixedLengthResponse(PARTIAL_CONTENT,
+                        MultipartRangesInputStream.contentType(boundary), is, len);
+                res.addHeader("Accept-Ranges", "bytes");
+                res.addHeader("Content-Length", "" + len);
+                res.addHeader("ETag", etag);
+
             } else {
-                if (headerIfRangeMissingOrMatching && range != null && startFrom >= stream.fileSize) {
-                    /*
-                     * Return the size of the file
-                     * 4xx responses are not trumped by if-none-match
-                     */
-                    res = newFixedLengthResponse(RANGE_NOT_SATISFIABLE, NanoHTTPD.MIME_PLAINTEXT, "");
-                    res.addHeader("Content-Range", "bytes */" + stream.fileSize);
-                    res.addHeader("ETag", etag);
-
-                } else if (range == null && headerIfNoneMatchPresentAndMatching) {
-                    /*
-                     * Full-file-fetch request would return entire file
-                     * respond with not-modified
-                     */
-                    res = newFixedLengthResponse(NOT_MODIFIED, MIME_OCTET_STREAM, "");
-                    res.addHeader("ETag", etag);
-
-                } else if (!headerIfRangeMissingOrMatching && headerIfNoneMatchPresentAndMatching) {
-                    /*
-                     * Range request that doesn't match current etag
-                     * would return entire (different) file respond with not-modified
-                     */
-                    res = newFixedLengthResponse(NOT_MODIFIED, MIME_OCTET_STREAM, "");
-                    res.addHeader("ETag", etag);
-
-                } else {
-                    TorrentInputStream is = engine.getTorrentInputStream(stream);
-                    res = newFixedLengthResponse(OK, MIME_OCTET_STREAM, is, stream.fileSize);
-                    res.addHeader("Accept-Ranges", "bytes");
-                    res.addHeader("Content-Length", "" + stream.fileSize);
-                    res.addHeader("ETag", etag);
-                    res.addHeader("Content-Disposition", "inline; filename=" + stream.id);
-                }
+                InputStream is = (headOnly ? null : openStream(stream));
+                res = newFixedLengthResponse(OK, MIME_OCTET_STREAM, is, stream.fileSize);
+                res.addHeader("Accept-Ranges", "bytes");
+                res.addHeader("Content-Length", "" + stream.fileSize);
+                res.addHeader("ETag", etag);
+                res.addHeader("Content-Disposition", "inline; filename=" + stream.id);
             }
 
             return res;
@@ -49,6 +49,7 @@ public class SessionSettings
     public static final boolean DEFAULT_ENCRYPT_OUT_CONNECTIONS = true;
     public static final EncryptMode DEFAULT_ENCRYPT_MODE = EncryptMode.ENABLED;
     public static final boolean DEFAULT_AUTO_MANAGED = false;
+    public static final boolean DEFAULT_RESTORE_PAUSED_ON_DEMAND = false;
     public static final String DEFAULT_INETADDRESS = "0.0.0.0";
     public static final int DEFAULT_PORT_RANGE_FIRST = 37000;
     public static final int DEFAULT_PORT_RANGE_SECOND = 57010;
@@ -93,6 +94,8 @@ public class SessionSettings
     public boolean encryptOutConnections = DEFAULT_ENCRYPT_OUT_CONNECTIONS;
     public EncryptMode encryptMode = DEFAULT_ENCRYPT_MODE;
     public boolean autoManaged = DEFAULT_AUTO_MANAGED;
+    /* Manually paused torrents are restored when requested, not at startup */
+    public boolean restorePausedOnDemand = DEFAULT_RESTORE_PAUSED_ON_DEMAND;
     public String inetAddress = DEFAULT_INETADDRESS;
     public ProxyType proxyType = DEFAULT_PROXY_TYPE;
     public String proxyAddress = DEFAULT_PROXY_ADDRESS;
@@ -140,6 +143,7 @@ public class SessionSettings
         this.encryptOutConnections = other.encryptOutConnections;
         this.encryptMode = other.encryptMode;
         this.autoManaged = other.autoManaged;
+        this.restorePausedOnDemand = other.restorePausedOnDemand;
         this.inetAddress = other.inetAddress;
         this.proxyType = other.proxyType;
         this.proxyAddress = other.proxyAddress;
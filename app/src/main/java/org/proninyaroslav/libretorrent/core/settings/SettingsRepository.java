@@ -83,6 +83,10 @@ public interface SettingsRepository
 
     void autostart(boolean val);
 
+    boolean restorePausedOnDemand();
+
+    void restorePausedOnDemand(boolean val);
+
     boolean keepAlive();
 
     void keepAlive(boolean val);
@@ -231,6 +235,14 @@ public interface SettingsRepository
 
     void watchDirDeleteFile(boolean val);
 
+    /*
+     * Takes effect after restart
+     */
+
+    boolean resumeJournal();
+
+    void resumeJournal(boolean val);
+
     /*
      * Limitations settings
      */
@@ -383,6 +395,18 @@ public interface SettingsRepository
 
     void streamingPort(int val);
 
+    int streamingCacheSize();
+
+    void streamingCacheSize(int val);
+
+    int streamingMaxClients();
+
+    void streamingMaxClients(int val);
+
+    int streamingMaxQueuedClients();
+
+    void streamingMaxQueuedClients(int val);
+
     /*
      * Logging settings
      */
@@ -29,6 +29,7 @@ import androidx.core.content.ContextCompat;
 import androidx.preference.PreferenceManager;
 
 import org.proninyaroslav.libretorrent.R;
+import org.proninyaroslav.libretorrent.core.model.stream.TorrentStreamServer;
 import org.proninyaroslav.libretorrent.core.system.FileSystemFacade;
 import org.proninyaroslav.libretorrent.core.system.SystemFacadeHelper;
 import org.proninyaroslav.libretorrent.core.utils.Utils;
@@ -63,6 +64,7 @@ public class SettingsRepositoryImpl implements SettingsRepository
         static final boolean foregroundNotifyCombinedPauseButton = false;
         /* Behavior settings */
         static final boolean autostart = false;
+        static final boolean restorePausedOnDemand = SessionSettings.DEFAULT_RESTORE_PAUSED_ON_DEMAND;
         static final boolean keepAlive = true;
         static final boolean shutdownDownloadsComplete = false;
         static final boolean cpuDoNotSleep = false;
@@ -113,6 +115,7 @@ public class SettingsRepositoryImpl implements SettingsRepository
             return "file://" + SystemFacadeHelper.getFileSystemFacade(context).getDefaultDownloadPath();
         }
         static final boolean watchDirDeleteFile = false;
+        static final boolean resumeJournal = false;
         static final boolean anonymousMode = SessionSettings.DEFAULT_ANONYMOUS_MODE;
         static final boolean seedingOutgoingConnections = SessionSettings.DEFAULT_SEEDING_OUTGOING_CONNECTIONS;
         /* Limitations settings */
@@ -153,6 +156,9 @@ public class SettingsRepositoryImpl implements SettingsRepository
         static final boolean enableStreaming = true;
         static final String streamingHostname = "127.0.0.1";
         static final int streamingPort = 8800;
+        static final int streamingCacheSize = 64; /* MiB */
+        static final int streamingMaxClients = TorrentStreamServer.DEFAULT_MAX_CLIENTS;
+        static final int streamingMaxQueuedClients = TorrentStreamServer.DEFAULT_MAX_QUEUED_CLIENTS;
         /* Logging settings */
         static final boolean logging = SessionSettings.DEFAULT_LOGGING;
         static final int maxLogSize = SessionSettings.DEFAULT_MAX_LOG_SIZE;
@@ -221,6 +227,7 @@ public class SettingsRepositoryImpl implements SettingsRepository
         settings.encryptOutConnections = encryptOutConnections();
         settings.encryptMode = SessionSettings.EncryptMode.fromValue(encryptMode());
         settings.autoManaged = autoManage();
+        settings.restorePausedOnDemand = restorePausedOnDemand();
         settings.anonymousMode = anonymousMode();
         settings.seedingOutgoingConnections = seedingOutgoingConnections();
         settings.useRandomPort = useRandomPort();
@@ -426,6 +433,21 @@ public class SettingsRepositoryImpl implements SettingsRepository
                 .apply();
     }
 
+    @Override
+    public boolean restorePausedOnDemand()
+    {
+        return pref.getBoolean(appContext.getString(R.string.pref_key_restore_paused_on_demand),
+                Default.restorePausedOnDemand);
+    }
+
+    @Override
+    public void restorePausedOnDemand(boolean val)
+    {
+        pref.edit()
+                .putBoolean(appContext.getString(R.string.pref_key_restore_paused_on_demand), val)
+                .apply();
+    }
+
     @Override
     public boolean keepAlive()
     {
@@ -889,6 +911,21 @@ public class SettingsRepositoryImpl implements SettingsRepository
                 .apply();
     }
 
+    @Override
+    public boolean resumeJournal()
+    {
+        return pref.getBoolean(appContext.getString(R.string.pref_key_resume_journal),
+                Default.resumeJournal);
+    }
+
+    @Override
+    public void resumeJournal(boolean val)
+    {
+        pref.edit()
+                .putBoolean(appContext.getString(R.string.pref_key_resume_journal), val)
+                .apply();
+    }
+
     @Override
     public int maxDownloadSpeedLimit()
     {
@@ -1440,6 +1477,51 @@ public class SettingsRepositoryImpl implements SettingsRepository
                 .apply();
     }
 
+    @Override
+    public int streamingCacheSize()
+    {
+        return pref.getInt(appContext.getString(R.string.pref_key_streaming_cache_size),
+                Default.streamingCacheSize);
+    }
+
+    @Override
+    public void streamingCacheSize(int val)
+    {
+        pref.edit()
+                .putInt(appContext.getString(R.string.pref_key_streaming_cache_size), val)
+                .apply();
+    }
+
+    @Override
+    public int streamingMaxClients()
+    {
+        return pref.getInt(appContext.getString(R.string.pref_key_streaming_max_clients),
+                Default.streamingMaxClients);
+    }
+
+    @Override
+    public void streamingMaxClients(int val)
+    {
+        pref.edit()
+                .putInt(appContext.getString(R.string.pref_key_streaming_max_clients), val)
+                .apply();
+    }
+
+    @Override
+    public int streamingMaxQueuedClients()
+    {
+        return pref.getInt(appContext.getString(R.string.pref_key_streaming_max_queued_clients),
+                Default.streamingMaxQueuedClients);
+    }
+
+    @Override
+    public void streamingMaxQueuedClients(int val)
+    {
+        pref.edit()
+                .putInt(appContext.getString(R.string.pref_key_streaming_max_queued_clients), val)
+                .apply();
+    }
+
     @Override
     public boolean logging()
     {
@@ -0,0 +1,774 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.proninyaroslav.libretorrent.core.storage;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/*
+ * Key-value store of fast resume data, based on append-only segment files.
+ * Each put or remove appends a checksummed record to the last segment,
+ * the index of the latest records is kept in memory. The index is saved
+ * to a checkpoint file after compaction and on close; on open it's loaded
+ * from the checkpoint and only the records appended after it are replayed.
+ * Without a valid checkpoint all segments are replayed in order.
+ * Records are read through memory-mapped segments, the checksum of a record
+ * loaded from the checkpoint is verified on first read. A torn record
+ * at the end of the last segment (e.g. after a crash) is truncated on open.
+ * When most of the stored bytes are old records, the live records are
+ * rewritten in the background into a new segment and the old ones are deleted.
+ *
+ * Segment format: MAGIC, VERSION, records.
+ * Record format: key length, data length (-1 if removed), key (UTF-8), data,
+ * CRC32 of the preceding fields.
+ * Checkpoint format: CHECKPOINT_MAGIC, VERSION, segment count,
+ * (segment number, size) for each segment, record count, (key length, key,
+ * segment number, data offset, data length, record size, record CRC32)
+ * for each record, CRC32 of the preceding fields.
+ */
+
+class ResumeJournal implements Closeable
+{
+    static final long DEFAULT_MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+    /* Don't compact small journals */
+    static final long MIN_COMPACT_SIZE = 1024 * 1024;
+    private static final int MAGIC = 0x4c54524a; /* LTRJ */
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    /* Key length, data length, CRC32 */
+    private static final int RECORD_OVERHEAD = 12;
+    private static final int MAX_KEY_LENGTH = 1024;
+    private static final int REMOVED = -1;
+    private static final int CHECKPOINT_MAGIC = 0x4c54524b; /* LTRK */
+    private static final String SEGMENT_EXT = ".seg";
+    private static final String TEMP_EXT = ".tmp";
+    private static final String CHECKPOINT_NAME = "index.chk";
+
+    private static final class Location
+    {
+        final int segment;
+        /* Data offset in the segment */
+        final long offset;
+        final int length;
+        final int recordSize;
+        final int crc;
+        /* Guarded by the journal */
+        boolean verified;
+
+        Location(int segment, long offset, int length, int recordSize, int crc, boolean verified)
+        {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.recordSize = recordSize;
+            this.crc = crc;
+            this.verified = verified;
+        }
+
+        long recordOffset()
+        {
+            /* Key length, data length, key */
+            return offset - (recordSize - length - 4);
+        }
+    }
+
+    private static final class Segment
+    {
+        final File file;
+        final FileChannel channel;
+        long size;
+        MappedByteBuffer map;
+
+        Segment(File file, FileChannel channel, long size)
+        {
+            this.file = file;
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+
+    private final File dir;
+    private final long maxSegmentSize;
+    /* Guarded by this */
+    private final HashMap<String, Location> index = new HashMap<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private long liveBytes;
+    private long totalBytes;
+    private boolean compactionScheduled;
+    private boolean closed;
+    /* Only one compaction at a time, the journal lock isn't held while copying */
+    private final Object compactLock = new Object();
+    private final ExecutorService compactExec = Executors.newSingleThreadExecutor((r) -> {
+        Thread t = new Thread(r);
+        t.setDaemon(true);
+        t.setName("ResumeJournal compaction");
+        return t;
+    });
+
+    ResumeJournal(@NonNull File dir, long maxSegmentSize) throws IOException
+    {
+        if (maxSegmentSize <= SEGMENT_HEADER_SIZE)
+            throw new IllegalArgumentException("Max segment size is too small");
+
+        this.dir = dir;
+        this.maxSegmentSize = maxSegmentSize;
+        open();
+    }
+
+    /*
+     * Returns true if the journal files exist in the directory
+     */
+
+    static boolean exists(@NonNull File dir)
+    {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_EXT));
+
+        return files != null && files.length > 0;
+    }
+
+    /*
+     * Deletes all journal files in the directory
+     */
+
+    static void delete(@NonNull File dir)
+    {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_EXT) ||
+                name.endsWith(TEMP_EXT) || name.equals(CHECKPOINT_NAME));
+        if (files == null)
+            return;
+
+        for (File f : files)
+            f.delete();
+    }
+
+    synchronized void put(@NonNull String key, @NonNull byte[] data) throws IOException
+    {
+        checkClosed();
+        append(key, data);
+        lastSegment().channel.force(false);
+        scheduleCompactionIfNeeded();
+    }
+
+    /*
+     * Writes all data with a single sync
+     */
+
+    synchronized void putAll(@NonNull Map<String, byte[]> data) throws IOException
+    {
+        checkClosed();
+        if (data.isEmpty())
+            return;
+
+        for (Map.Entry<String, byte[]> entry : data.entrySet())
+            append(entry.getKey(), entry.getValue());
+        /* Records may be spread over two segments */
+        for (Segment s : segments.values())
+            s.channel.force(false);
+        scheduleCompactionIfNeeded();
+    }
+
+    /*
+     * Returns null if there is no data with the given key
+     * or the record is damaged
+     */
+
+    synchronized byte[] get(@NonNull String key) throws IOException
+    {
+        checkClosed();
+        Location loc = index.get(key);
+        if (loc == null)
+            return null;
+
+        Segment s = segments.get(loc.segment);
+        if (s.map == null || s.map.capacity() < loc.offset + loc.length)
+            s.map = s.channel.map(FileChannel.MapMode.READ_ONLY, 0, s.size);
+
+        if (!loc.verified) {
+            byte[] record = new byte[loc.recordSize - 4];
+            ByteBuffer buf = s.map.duplicate();
+            buf.position((int)loc.recordOffset());
+            buf.get(record);
+            if (recordCrc(record, record.length) != loc.crc) {
+                /* Lost, as if it's found on replay */
+                updateIndex(key, null);
+                return null;
+            }
+            loc.verified = true;
+        }
+
+        byte[] data = new byte[loc.length];
+        ByteBuffer buf = s.map.duplicate();
+        buf.position((int)loc.offset);
+        buf.get(data);
+
+        return data;
+    }
+
+    synchronized void remove(@NonNull String key) throws IOException
+    {
+        checkClosed();
+        if (!index.containsKey(key))
+            return;
+
+        append(key, null);
+        lastSegment().channel.force(false);
+        scheduleCompactionIfNeeded();
+    }
+
+    @NonNull
+    synchronized List<String> keys()
+    {
+        return new ArrayList<>(index.keySet());
+    }
+
+    synchronized int size()
+    {
+        return index.size();
+    }
+
+    synchronized long getLiveBytes()
+    {
+        return liveBytes;
+    }
+
+    synchronized long getTotalBytes()
+    {
+        return totalBytes;
+    }
+
+    synchronized int getSegmentCount()
+    {
+        return segments.size();
+    }
+
+    /*
+     * Rewrites the live records into a new segment. The records are copied
+     * without holding the journal lock: appends go to a segment after
+     * the new one, and records changed during the copy are kept in the index.
+     * If it's interrupted, the old segments stay valid and the temp file
+     * is deleted on next open
+     */
+
+    void compact() throws IOException
+    {
+        synchronized (compactLock) {
+            HashMap<String, Location> snapshot;
+            TreeMap<Integer, Segment> sealed;
+            int number;
+            synchronized (this) {
+                checkClosed();
+                snapshot = new HashMap<>(index);
+                sealed = new TreeMap<>(segments);
+                number = segments.lastKey() + 1;
+                /* Sealed segments aren't modified while the records are copied */
+                newSegment(number + 1);
+            }
+
+            File tmpFile = new File(dir, segmentName(number) + TEMP_EXT);
+            File newFile = new File(dir, segmentName(number));
+            HashMap<String, Location> newIndex = new HashMap<>(snapshot.size());
+            long size;
+            try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw")) {
+                FileChannel channel = raf.getChannel();
+                channel.truncate(0);
+                writeFully(channel, segmentHeader(), 0);
+                size = SEGMENT_HEADER_SIZE;
+                for (Map.Entry<String, Location> entry : snapshot.entrySet()) {
+                    Location loc = entry.getValue();
+                    ByteBuffer record = readRecord(sealed.get(loc.segment), loc);
+                    /* Damaged records aren't copied */
+                    if (recordCrc(record.array(), loc.recordSize - 4) != loc.crc)
+                        continue;
+                    int keyLength = loc.recordSize - RECORD_OVERHEAD - loc.length;
+                    writeFully(channel, record, size);
+                    newIndex.put(entry.getKey(), new Location(number,
+                            size + 8 + keyLength, loc.length, loc.recordSize, loc.crc, true));
+                    size += loc.recordSize;
+                }
+                channel.force(true);
+
+            } catch (IOException e) {
+                tmpFile.delete();
+                throw e;
+            }
+
+            synchronized (this) {
+                if (closed) {
+                    tmpFile.delete();
+                    throw new IOException("Journal is closed");
+                }
+                if (!tmpFile.renameTo(newFile)) {
+                    tmpFile.delete();
+                    throw new IOException("Unable to rename " + tmpFile);
+                }
+
+                /* In ascending order, so that removed records can't be restored */
+                for (Map.Entry<Integer, Segment> entry : sealed.entrySet()) {
+                    entry.getValue().channel.close();
+                    entry.getValue().file.delete();
+                    segments.remove(entry.getKey());
+                }
+                FileChannel channel = new RandomAccessFile(newFile, "rw").getChannel();
+                segments.put(number, new Segment(newFile, channel, size));
+                /* Nothing is appended during the copy, the new segment is the last one */
+                Segment next = segments.lastEntry().getValue();
+                if (segments.lastKey() == number + 1 && next.size == SEGMENT_HEADER_SIZE) {
+                    next.channel.close();
+                    next.file.delete();
+                    segments.remove(number + 1);
+                }
+
+                /* Records that are changed or removed during the copy are newer */
+                for (Map.Entry<String, Location> entry : snapshot.entrySet()) {
+                    if (index.get(entry.getKey()) != entry.getValue())
+                        continue;
+                    Location loc = newIndex.get(entry.getKey());
+                    if (loc == null)
+                        index.remove(entry.getKey());
+                    else
+                        index.put(entry.getKey(), loc);
+                }
+                liveBytes = 0;
+                for (Location loc : index.values())
+                    liveBytes += loc.recordSize;
+                totalBytes = 0;
+                for (Segment seg : segments.values())
+                    totalBytes += seg.size;
+                saveCheckpoint();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (closed)
+            return;
+
+        closed = true;
+        compactExec.shutdown();
+        saveCheckpoint();
+        for (Segment s : segments.values())
+            s.channel.close();
+        segments.clear();
+        index.clear();
+    }
+
+    private void open() throws IOException
+    {
+        if (!dir.exists() && !dir.mkdirs())
+            throw new IOException("Unable to create " + dir);
+
+        File[] files = dir.listFiles();
+        TreeMap<Integer, File> segmentFiles = new TreeMap<>();
+        if (files != null) {
+            for (File f : files) {
+                String name = f.getName();
+                if (name.endsWith(TEMP_EXT)) {
+                    /* Interrupted compaction */
+                    f.delete();
+                } else if (name.endsWith(SEGMENT_EXT)) {
+                    try {
+                        int number = Integer.parseInt(name.substring(0,
+                                name.length() - SEGMENT_EXT.length()));
+                        segmentFiles.put(number, f);
+                    } catch (NumberFormatException e) {
+                        /* Not a segment */
+                    }
+                }
+            }
+        }
+
+        Map<Integer, Long> checkpoint = loadCheckpoint(segmentFiles);
+        boolean replayed = false;
+        for (Map.Entry<Integer, File> entry : segmentFiles.entrySet()) {
+            boolean last = entry.getKey().equals(segmentFiles.lastKey());
+            FileChannel channel = new RandomAccessFile(entry.getValue(), "rw").getChannel();
+            Segment s = new Segment(entry.getValue(), channel, channel.size());
+            segments.put(entry.getKey(), s);
+            Long from = checkpoint == null ? null : checkpoint.get(entry.getKey());
+            if (from == null || from != s.size) {
+                replay(entry.getKey(), s, last, from == null ? SEGMENT_HEADER_SIZE : from);
+                replayed = true;
+            }
+            totalBytes += s.size;
+        }
+        if (segments.isEmpty())
+            newSegment(0);
+        else if (replayed)
+            saveCheckpoint();
+    }
+
+    private void replay(int number, Segment s, boolean last, long from) throws IOException
+    {
+        long validSize = 0;
+        if (s.size >= SEGMENT_HEADER_SIZE) {
+            MappedByteBuffer map = s.channel.map(FileChannel.MapMode.READ_ONLY, 0, s.size);
+            if (map.getInt(0) == MAGIC && map.getInt(4) == VERSION)
+                validSize = replayRecords(number, map, (int)from);
+        }
+
+        if (validSize == s.size)
+            return;
+        if (!last) {
+            /* Sealed segment isn't modified, records after the damaged one are skipped */
+            s.size = validSize;
+            return;
+        }
+
+        /* Torn write */
+        if (validSize == 0) {
+            s.channel.truncate(0);
+            writeFully(s.channel, segmentHeader(), 0);
+            validSize = SEGMENT_HEADER_SIZE;
+        } else {
+            s.channel.truncate(validSize);
+        }
+        s.channel.force(true);
+        s.size = validSize;
+    }
+
+    /*
+     * Returns the size of the valid part of the segment
+     */
+
+    private long replayRecords(int number, MappedByteBuffer map, int pos)
+    {
+        int limit = map.capacity();
+
+        while (limit - pos >= RECORD_OVERHEAD) {
+            int keyLength = map.getInt(pos);
+            int dataLength = map.getInt(pos + 4);
+            if (keyLength <= 0 || keyLength > MAX_KEY_LENGTH || dataLength < REMOVED)
+                break;
+            long recordSize = (long)RECORD_OVERHEAD + keyLength + Math.max(dataLength, 0);
+            if (recordSize > limit - pos)
+                break;
+
+            byte[] record = new byte[(int)recordSize - 4];
+            ByteBuffer buf = map.duplicate();
+            buf.position(pos);
+            buf.get(record);
+            int recordCrc = recordCrc(record, record.length);
+            if (recordCrc != map.getInt(pos + record.length))
+                break;
+
+            String key = new String(record, 8, keyLength, StandardCharsets.UTF_8);
+            Location loc = dataLength == REMOVED ?
+                    null :
+                    new Location(number, pos + 8 + keyLength, dataLength,
+                            (int)recordSize, recordCrc, true);
+            updateIndex(key, loc);
+            pos += recordSize;
+        }
+
+        return pos;
+    }
+
+    private void append(String key, byte[] data) throws IOException
+    {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length == 0 || keyBytes.length > MAX_KEY_LENGTH)
+            throw new IllegalArgumentException("Invalid key length: " + keyBytes.length);
+
+        Segment s = lastSegment();
+        if (s.size >= maxSegmentSize)
+            s = newSegment(segments.lastKey() + 1);
+
+        ByteBuffer record = encodeRecord(keyBytes, data);
+        int crc = record.getInt(record.limit() - 4);
+        writeFully(s.channel, record, s.size);
+        Location loc = data == null ?
+                null :
+                new Location(segments.lastKey(), s.size + 8 + keyBytes.length,
+                        data.length, record.capacity(), crc, true);
+        s.size += record.capacity();
+        totalBytes += record.capacity();
+        updateIndex(key, loc);
+    }
+
+    private void updateIndex(String key, Location loc)
+    {
+        Location prev = loc == null ? index.remove(key) : index.put(key, loc);
+        if (prev != null)
+            liveBytes -= prev.recordSize;
+        if (loc != null)
+            liveBytes += loc.recordSize;
+    }
+
+    private Segment newSegment(int number) throws IOException
+    {
+        File file = new File(dir, segmentName(number));
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.truncate(0);
+        writeFully(channel, segmentHeader(), 0);
+        channel.force(true);
+
+        Segment s = new Segment(file, channel, SEGMENT_HEADER_SIZE);
+        segments.put(number, s);
+        totalBytes += SEGMENT_HEADER_SIZE;
+
+        return s;
+    }
+
+    private Segment lastSegment()
+    {
+        return segments.lastEntry().getValue();
+    }
+
+    private void scheduleCompactionIfNeeded()
+    {
+        if (compactionScheduled || totalBytes < MIN_COMPACT_SIZE || liveBytes * 2 > totalBytes)
+            return;
+
+        compactionScheduled = true;
+        compactExec.execute(() -> {
+            synchronized (this) {
+                compactionScheduled = false;
+                if (closed)
+                    return;
+            }
+            try {
+                compact();
+            } catch (IOException e) {
+                /* Ignore, the old segments stay valid */
+            }
+        });
+    }
+
+    /*
+     * Positional read of the whole record, doesn't use the mapping
+     * of the segment, so it can be called without holding the lock
+     */
+
+    private static ByteBuffer readRecord(Segment s, Location loc) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(loc.recordSize);
+        long position = loc.recordOffset();
+        while (buf.hasRemaining()) {
+            int n = s.channel.read(buf, position);
+            if (n < 0)
+                throw new IOException("Unexpected end of " + s.file);
+            position += n;
+        }
+        buf.flip();
+
+        return buf;
+    }
+
+    /*
+     * Checksum of the record fields preceding its CRC32
+     */
+
+    private static int recordCrc(byte[] record, int length)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, length);
+
+        return (int)crc.getValue();
+    }
+
+    /*
+     * Saving is optional: if it fails, the previous checkpoint is
+     * either still valid or doesn't match the segments and is ignored on open
+     */
+
+    private void saveCheckpoint()
+    {
+        File tmpFile = new File(dir, CHECKPOINT_NAME + TEMP_EXT);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(segments.size());
+            for (Map.Entry<Integer, Segment> entry : segments.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeLong(entry.getValue().size);
+            }
+            out.writeInt(index.size());
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                Location loc = entry.getValue();
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeInt(loc.segment);
+                out.writeLong(loc.offset);
+                out.writeInt(loc.length);
+                out.writeInt(loc.recordSize);
+                out.writeInt(loc.crc);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int)crc.getValue());
+            out.flush();
+
+            try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw")) {
+                FileChannel channel = raf.getChannel();
+                channel.truncate(0);
+                writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()), 0);
+                channel.force(true);
+            }
+            if (!tmpFile.renameTo(new File(dir, CHECKPOINT_NAME)))
+                throw new IOException("Unable to rename " + tmpFile);
+
+        } catch (IOException e) {
+            tmpFile.delete();
+        }
+    }
+
+    /*
+     * Loads the index from the checkpoint and returns the sizes of
+     * the segments covered by it, or null if there is no valid checkpoint.
+     * The checkpoint is valid if its segments still exist, aren't
+     * shorter than it's saved and other segments are newer
+     */
+
+    private Map<Integer, Long> loadCheckpoint(TreeMap<Integer, File> segmentFiles)
+    {
+        File file = new File(dir, CHECKPOINT_NAME);
+        if (!file.exists() || segmentFiles.isEmpty())
+            return null;
+
+        HashMap<Integer, Long> sizes = new HashMap<>();
+        try {
+            byte[] bytes;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                if (raf.length() < 4 || raf.length() > Integer.MAX_VALUE)
+                    return null;
+                bytes = new byte[(int)raf.length()];
+                raf.readFully(bytes);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length - 4);
+            if ((int)crc.getValue() != ByteBuffer.wrap(bytes).getInt(bytes.length - 4))
+                return null;
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != VERSION)
+                return null;
+            int segmentCount = in.readInt();
+            for (int i = 0; i < segmentCount; i++) {
+                int number = in.readInt();
+                long size = in.readLong();
+                File segment = segmentFiles.get(number);
+                if (segment == null || segment.length() < size)
+                    return null;
+                sizes.put(number, size);
+            }
+            if (sizes.isEmpty())
+                return null;
+            int lastNumber = Collections.max(sizes.keySet());
+            for (int number : segmentFiles.keySet()) {
+                if (!sizes.containsKey(number) && number < lastNumber)
+                    return null;
+            }
+
+            int recordCount = in.readInt();
+            for (int i = 0; i < recordCount; i++) {
+                int keyLength = in.readInt();
+                if (keyLength <= 0 || keyLength > MAX_KEY_LENGTH)
+                    throw new IOException("Invalid key length: " + keyLength);
+                byte[] key = new byte[keyLength];
+                in.readFully(key);
+                Location loc = new Location(in.readInt(), in.readLong(), in.readInt(),
+                        in.readInt(), in.readInt(), false);
+                if (!sizes.containsKey(loc.segment) ||
+                        loc.offset + loc.length + 4 > sizes.get(loc.segment))
+                    throw new IOException("Invalid record location");
+                updateIndex(new String(key, StandardCharsets.UTF_8), loc);
+            }
+
+            return sizes;
+
+        } catch (IOException e) {
+            index.clear();
+            liveBytes = 0;
+
+            return null;
+        }
+    }
+
+    private void checkClosed() throws IOException
+    {
+        if (closed)
+            throw new IOException("Journal is closed");
+    }
+
+    private static ByteBuffer segmentHeader()
+    {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+
+        return header;
+    }
+
+    private static ByteBuffer encodeRecord(byte[] key, byte[] data)
+    {
+        int dataLength = data == null ? 0 : data.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + key.length + dataLength);
+        record.putInt(key.length);
+        record.putInt(data == null ? REMOVED : data.length);
+        record.put(key);
+        if (data != null)
+            record.put(data);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int)crc.getValue());
+        record.flip();
+
+        return record;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException
+    {
+        while (buf.hasRemaining())
+            position += channel.write(buf, position);
+    }
+
+    private static String segmentName(int number)
+    {
+        return String.format(Locale.US, "%08d", number) + SEGMENT_EXT;
+    }
+}
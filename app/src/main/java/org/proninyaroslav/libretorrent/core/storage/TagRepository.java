@@ -24,6 +24,7 @@ import androidx.annotation.NonNull;
 import org.proninyaroslav.libretorrent.core.model.data.entity.TagInfo;
 
 import java.util.List;
+import java.util.Map;
 
 import io.reactivex.Flowable;
 import io.reactivex.Single;
@@ -44,4 +45,12 @@ public interface TagRepository {
     Single<List<TagInfo>> getByTorrentIdAsync(String torrentId);
 
     List<TagInfo> getByTorrentId(String torrentId);
+
+    /*
+     * Returns tags of all torrents, keyed by torrent id.
+     * The map is cached in memory until the tags tables are changed
+     */
+
+    @NonNull
+    Map<String, List<TagInfo>> getTorrentsTagsIndex();
 }
@@ -20,19 +20,43 @@
 package org.proninyaroslav.libretorrent.core.storage;
 
 import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
 
 import org.proninyaroslav.libretorrent.core.model.data.entity.TagInfo;
+import org.proninyaroslav.libretorrent.core.model.data.entity.TorrentTagInfo;
+import org.proninyaroslav.libretorrent.core.model.data.entity.TorrentTagJoin;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.reactivex.Flowable;
 import io.reactivex.Single;
 
 public class TagRepositoryImpl implements TagRepository {
     private final @NonNull AppDatabase db;
+    private volatile Map<String, List<TagInfo>> tagsIndex;
+    /* Incremented on every change of the tags tables */
+    private final AtomicLong tagsIndexVersion = new AtomicLong();
+
+    private final InvalidationTracker.Observer tagsObserver = new InvalidationTracker.Observer(
+            TagInfo.class.getSimpleName(),
+            TorrentTagInfo.class.getSimpleName()
+    ) {
+        @Override
+        public void onInvalidated(@NonNull Set<String> tables) {
+            tagsIndexVersion.incrementAndGet();
+            tagsIndex = null;
+        }
+    };
 
     public TagRepositoryImpl(@NonNull AppDatabase db) {
         this.db = db;
+        db.getInvalidationTracker().addObserver(tagsObserver);
     }
 
     @Override
@@ -74,4 +98,31 @@ public class TagRepositoryImpl implements TagRepository {
     public List<TagInfo> getByTorrentId(String torrentId) {
         return db.tagInfoDao().getByTorrentId(torrentId);
     }
+
+    @NonNull
+    @Override
+    public Map<String, List<TagInfo>> getTorrentsTagsIndex() {
+        var index = tagsIndex;
+        if (index != null) {
+            return index;
+        }
+
+        long version = tagsIndexVersion.get();
+        var newIndex = new HashMap<String, List<TagInfo>>();
+        for (var row : db.tagInfoDao().getAllTorrentTags()) {
+            var tags = newIndex.get(row.torrentId);
+            if (tags == null) {
+                tags = new ArrayList<>();
+                newIndex.put(row.torrentId, tags);
+            }
+            tags.add(row.tag);
+        }
+        index = Collections.unmodifiableMap(newIndex);
+        /* Don't cache the index if the tables were changed while loading */
+        if (tagsIndexVersion.get() == version) {
+            tagsIndex = index;
+        }
+
+        return index;
+    }
 }
@@ -47,10 +47,47 @@ public interface TorrentRepository
 
     List<Torrent> getAllTorrents();
 
+    /*
+     * Loads all torrents into the memory cache, if not already loaded
+     */
+
+    void warmUpCache();
+
+    long getCacheHitCount();
+
+    long getCacheMissCount();
+
     void addFastResume(@NonNull FastResume fastResume);
 
+    /*
+     * Adds all data in a single transaction
+     */
+
+    void addFastResumes(@NonNull List<FastResume> fastResumes);
+
     FastResume getFastResumeById(@NonNull String torrentId);
 
+    /*
+     * Missing fast resume data are skipped
+     */
+
+    List<FastResume> getFastResumeByIds(@NonNull List<String> torrentIds);
+
+    /*
+     * Info dictionaries are stored separately from the fast resume data,
+     * once per info hash, because they don't change
+     */
+
+    boolean hasTorrentInfo(@NonNull String infoHash);
+
+    void saveTorrentInfo(@NonNull String infoHash, @NonNull byte[] data) throws IOException;
+
+    /*
+     * Returns null if there is no stored info dictionary
+     */
+
+    byte[] getTorrentInfo(@NonNull String infoHash) throws IOException;
+
     void saveSession(@NonNull byte[] data) throws IOException;
 
     String getSessionFile();
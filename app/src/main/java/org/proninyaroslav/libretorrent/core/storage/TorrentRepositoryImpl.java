@@ -20,6 +20,7 @@
 package org.proninyaroslav.libretorrent.core.storage;
 
 import android.content.Context;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 
@@ -30,46 +31,117 @@ import org.proninyaroslav.libretorrent.core.model.data.entity.TorrentTagInfo;
 import org.proninyaroslav.libretorrent.core.system.SystemFacadeHelper;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.reactivex.Flowable;
 import io.reactivex.Single;
 
 public class TorrentRepositoryImpl implements TorrentRepository {
     private static final String TAG = TorrentRepositoryImpl.class.getSimpleName();
+    private static final int MAX_QUERY_PARAMS = 999;
+    private static final int MIGRATION_BATCH_SIZE = 50;
 
     private static final class FileDataModel {
         private static final String TORRENT_SESSION_FILE = "session";
+        private static final String TORRENT_INFO_DIR = "torrent_info";
+        private static final String RESUME_JOURNAL_DIR = "resume_journal";
+        private static final String TEMP_DIR_EXT = ".tmp";
     }
 
     private Context appContext;
     private AppDatabase db;
-
-    public TorrentRepositoryImpl(@NonNull Context appContext, @NonNull AppDatabase db) {
+    /*
+     * Write-through cache of torrents, keyed by id. Torrents are written only
+     * through this repository, so after loading all torrents the cache
+     * mirrors the table. Returns copies, as Room does, because callers
+     * modify the received object before update
+     */
+    private final LinkedHashMap<String, Torrent> torrentsCache = new LinkedHashMap<>();
+    private boolean torrentsCacheLoaded;
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private final AtomicLong cacheMissCount = new AtomicLong();
+    /*
+     * Fast resume data are stored either in the table or in the journal.
+     * The store is initialized on the first access, because moving
+     * the data between them can't be done in the main thread
+     */
+    private final boolean useResumeJournal;
+    private final Object resumeStoreLock = new Object();
+    private boolean resumeStoreInitialized;
+    private ResumeJournal resumeJournal;
+    /* Data are in the journal that can't be opened, the table isn't used instead */
+    private IOException resumeJournalError;
+
+    public TorrentRepositoryImpl(@NonNull Context appContext,
+                                 @NonNull AppDatabase db,
+                                 boolean useResumeJournal) {
         this.appContext = appContext;
         this.db = db;
+        this.useResumeJournal = useResumeJournal;
     }
 
     @Override
     public void addTorrent(@NonNull Torrent torrent) {
-        db.torrentDao().add(torrent);
+        synchronized (torrentsCache) {
+            db.torrentDao().add(torrent);
+            torrentsCache.put(torrent.id, new Torrent(torrent));
+        }
     }
 
     @Override
     public void updateTorrent(@NonNull Torrent torrent) {
-        db.torrentDao().update(torrent);
+        synchronized (torrentsCache) {
+            db.torrentDao().update(torrent);
+            /* Update doesn't insert a row, so the same with the cache */
+            if (torrentsCache.containsKey(torrent.id)) {
+                torrentsCache.put(torrent.id, new Torrent(torrent));
+            }
+        }
     }
 
     @Override
     public void deleteTorrent(@NonNull Torrent torrent) {
-        db.torrentDao().delete(torrent);
+        synchronized (torrentsCache) {
+            db.torrentDao().delete(torrent);
+            torrentsCache.remove(torrent.id);
+        }
+        try {
+            var journal = getResumeJournal();
+            if (journal != null) {
+                journal.remove(torrent.id);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, Log.getStackTraceString(e));
+        }
+        /* Torrent id is the info hash */
+        var infoFile = getTorrentInfoFile(torrent.id);
+        if (infoFile.exists() && !infoFile.delete()) {
+            Log.w(TAG, "Unable to delete info dictionary of " + torrent.id);
+        }
     }
 
     @Override
     public Torrent getTorrentById(@NonNull String id) {
-        return db.torrentDao().getTorrentById(id);
+        synchronized (torrentsCache) {
+            Torrent torrent = torrentsCache.get(id);
+            if (torrent != null || torrentsCacheLoaded) {
+                cacheHitCount.incrementAndGet();
+                return (torrent == null ? null : new Torrent(torrent));
+            }
+
+            cacheMissCount.incrementAndGet();
+            torrent = db.torrentDao().getTorrentById(id);
+            if (torrent != null) {
+                torrentsCache.put(id, new Torrent(torrent));
+            }
+
+            return torrent;
+        }
     }
 
     @Override
@@ -84,17 +156,272 @@ public class TorrentRepositoryImpl implements TorrentRepository {
 
     @Override
     public List<Torrent> getAllTorrents() {
-        return db.torrentDao().getAllTorrents();
+        synchronized (torrentsCache) {
+            if (torrentsCacheLoaded) {
+                cacheHitCount.incrementAndGet();
+            } else {
+                cacheMissCount.incrementAndGet();
+                loadCache();
+            }
+
+            var torrents = new ArrayList<Torrent>(torrentsCache.size());
+            for (var torrent : torrentsCache.values()) {
+                torrents.add(new Torrent(torrent));
+            }
+
+            return torrents;
+        }
+    }
+
+    @Override
+    public void warmUpCache() {
+        synchronized (torrentsCache) {
+            if (!torrentsCacheLoaded) {
+                loadCache();
+            }
+        }
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return cacheHitCount.get();
+    }
+
+    @Override
+    public long getCacheMissCount() {
+        return cacheMissCount.get();
+    }
+
+    private void loadCache() {
+        torrentsCache.clear();
+        for (var torrent : db.torrentDao().getAllTorrents()) {
+            torrentsCache.put(torrent.id, torrent);
+        }
+        torrentsCacheLoaded = true;
     }
 
     @Override
     public void addFastResume(@NonNull FastResume fastResume) {
-        db.fastResumeDao().add(fastResume);
+        try {
+            var journal = getResumeJournal();
+            if (journal == null) {
+                db.fastResumeDao().add(fastResume);
+                return;
+            }
+            journal.put(fastResume.torrentId, fastResume.data);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write fast resume data", e);
+        }
+    }
+
+    @Override
+    public void addFastResumes(@NonNull List<FastResume> fastResumes) {
+        try {
+            var journal = getResumeJournal();
+            if (journal == null) {
+                db.fastResumeDao().add(fastResumes);
+                return;
+            }
+
+            var data = new LinkedHashMap<String, byte[]>();
+            for (var fastResume : fastResumes) {
+                data.put(fastResume.torrentId, fastResume.data);
+            }
+            journal.putAll(data);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write fast resume data", e);
+        }
     }
 
     @Override
     public FastResume getFastResumeById(@NonNull String torrentId) {
-        return db.fastResumeDao().getByTorrentId(torrentId);
+        try {
+            var journal = getResumeJournal();
+            if (journal == null) {
+                return db.fastResumeDao().getByTorrentId(torrentId);
+            }
+            var data = journal.get(torrentId);
+            return (data == null ? null : new FastResume(torrentId, data));
+        } catch (IOException e) {
+            Log.e(TAG, Log.getStackTraceString(e));
+            return null;
+        }
+    }
+
+    @Override
+    public List<FastResume> getFastResumeByIds(@NonNull List<String> torrentIds) {
+        var fastResumes = new ArrayList<FastResume>(torrentIds.size());
+        ResumeJournal journal;
+        try {
+            journal = getResumeJournal();
+        } catch (IOException e) {
+            Log.e(TAG, Log.getStackTraceString(e));
+            return fastResumes;
+        }
+        if (journal != null) {
+            for (var id : torrentIds) {
+                var fastResume = getFastResumeById(id);
+                if (fastResume != null) {
+                    fastResumes.add(fastResume);
+                }
+            }
+            return fastResumes;
+        }
+
+        /* Stay within the SQLite limit of query parameters */
+        for (int i = 0; i < torrentIds.size(); i += MAX_QUERY_PARAMS) {
+            var ids = torrentIds.subList(i, Math.min(i + MAX_QUERY_PARAMS, torrentIds.size()));
+            fastResumes.addAll(db.fastResumeDao().getByTorrentIds(ids));
+        }
+
+        return fastResumes;
+    }
+
+    @Override
+    public boolean hasTorrentInfo(@NonNull String infoHash) {
+        return getTorrentInfoFile(infoHash).exists();
+    }
+
+    @Override
+    public void saveTorrentInfo(@NonNull String infoHash, @NonNull byte[] data) throws IOException {
+        var infoFile = getTorrentInfoFile(infoHash);
+        /* Write to a temp file first, so that the torrent isn't left with a truncated file */
+        var tmpFile = new File(infoFile.getParentFile(), infoFile.getName() + ".tmp");
+        org.apache.commons.io.FileUtils.forceMkdir(infoFile.getParentFile());
+        try (var out = new FileOutputStream(tmpFile)) {
+            out.write(data);
+            /* Make sure the data is on the disk before the rename is */
+            out.getFD().sync();
+        } catch (IOException e) {
+            tmpFile.delete();
+            throw e;
+        }
+        if (!tmpFile.renameTo(infoFile)) {
+            tmpFile.delete();
+            throw new IOException("Unable to save info dictionary of " + infoHash);
+        }
+    }
+
+    @Override
+    public byte[] getTorrentInfo(@NonNull String infoHash) throws IOException {
+        var infoFile = getTorrentInfoFile(infoHash);
+        if (!infoFile.exists()) {
+            return null;
+        }
+
+        return org.apache.commons.io.FileUtils.readFileToByteArray(infoFile);
+    }
+
+    /*
+     * Returns null if the table is used. If the journal is selected, but it
+     * can't be opened, fails instead of using the table: the data have been
+     * moved to the journal, so the table has no data to restore
+     */
+
+    private ResumeJournal getResumeJournal() throws IOException {
+        synchronized (resumeStoreLock) {
+            if (!resumeStoreInitialized) {
+                resumeStoreInitialized = true;
+                try {
+                    initResumeStore();
+                } catch (Exception e) {
+                    Log.e(TAG, "Unable to open resume journal: " + Log.getStackTraceString(e));
+                    resumeJournal = null;
+                    /* Otherwise the migration to the journal isn't completed, the data are in the table */
+                    var dir = new File(appContext.getFilesDir(), FileDataModel.RESUME_JOURNAL_DIR);
+                    if (useResumeJournal && ResumeJournal.exists(dir)) {
+                        resumeJournalError = new IOException("Unable to open resume journal", e);
+                    }
+                }
+            }
+            if (resumeJournalError != null) {
+                throw resumeJournalError;
+            }
+
+            return resumeJournal;
+        }
+    }
+
+    /*
+     * Moves the data to the selected store, if it has been changed
+     */
+
+    private void initResumeStore() throws IOException {
+        var dir = new File(appContext.getFilesDir(), FileDataModel.RESUME_JOURNAL_DIR);
+        if (useResumeJournal) {
+            if (!ResumeJournal.exists(dir)) {
+                migrateToJournal(dir);
+            }
+            resumeJournal = new ResumeJournal(dir, ResumeJournal.DEFAULT_MAX_SEGMENT_SIZE);
+
+        } else if (ResumeJournal.exists(dir)) {
+            migrateFromJournal(dir);
+        }
+    }
+
+    /*
+     * The journal is built in a temp directory and renamed when it's complete,
+     * so that an interrupted migration is started again
+     */
+
+    private void migrateToJournal(File dir) throws IOException {
+        var tmpDir = new File(dir.getParentFile(), dir.getName() + FileDataModel.TEMP_DIR_EXT);
+        ResumeJournal.delete(tmpDir);
+
+        var torrentIds = new ArrayList<String>();
+        for (var torrent : getAllTorrents()) {
+            torrentIds.add(torrent.id);
+        }
+        try (var journal = new ResumeJournal(tmpDir, ResumeJournal.DEFAULT_MAX_SEGMENT_SIZE)) {
+            for (int i = 0; i < torrentIds.size(); i += MIGRATION_BATCH_SIZE) {
+                var ids = torrentIds.subList(i, Math.min(i + MIGRATION_BATCH_SIZE, torrentIds.size()));
+                var data = new LinkedHashMap<String, byte[]>();
+                for (var fastResume : db.fastResumeDao().getByTorrentIds(ids)) {
+                    data.put(fastResume.torrentId, fastResume.data);
+                }
+                journal.putAll(data);
+            }
+        }
+
+        ResumeJournal.delete(dir);
+        if (dir.exists() && !dir.delete() || !tmpDir.renameTo(dir)) {
+            throw new IOException("Unable to rename " + tmpDir);
+        }
+        db.fastResumeDao().deleteAll();
+    }
+
+    /*
+     * The journal is deleted after all data are copied to the table,
+     * so that an interrupted migration is started again
+     */
+
+    private void migrateFromJournal(File dir) throws IOException {
+        try (var journal = new ResumeJournal(dir, ResumeJournal.DEFAULT_MAX_SEGMENT_SIZE)) {
+            var batch = new ArrayList<FastResume>(MIGRATION_BATCH_SIZE);
+            for (var id : journal.keys()) {
+                var data = journal.get(id);
+                /* Skip data of deleted torrents, it violates the foreign key */
+                if (data == null || getTorrentById(id) == null) {
+                    continue;
+                }
+                batch.add(new FastResume(id, data));
+                if (batch.size() == MIGRATION_BATCH_SIZE) {
+                    db.fastResumeDao().add(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                db.fastResumeDao().add(batch);
+            }
+        }
+        ResumeJournal.delete(dir);
+    }
+
+    private File getTorrentInfoFile(String infoHash) {
+        /* Internal storage, because the torrent can't be restored without it */
+        var infoDir = new File(appContext.getFilesDir(), FileDataModel.TORRENT_INFO_DIR);
+
+        return new File(infoDir, infoHash);
     }
 
     @Override
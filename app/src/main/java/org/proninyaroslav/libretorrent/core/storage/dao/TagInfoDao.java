@@ -27,6 +27,7 @@ import androidx.room.Query;
 import androidx.room.Update;
 
 import org.proninyaroslav.libretorrent.core.model.data.entity.TagInfo;
+import org.proninyaroslav.libretorrent.core.model.data.entity.TorrentTagJoin;
 
 import java.util.List;
 
@@ -61,4 +62,8 @@ public interface TagInfoDao {
     @Query("SELECT * FROM TagInfo WHERE id IN " +
             "(SELECT tagId FROM TorrentTagInfo WHERE torrentId = :torrentId)")
     List<TagInfo> getByTorrentId(String torrentId);
+
+    @Query("SELECT TorrentTagInfo.torrentId, TagInfo.* FROM TorrentTagInfo " +
+            "INNER JOIN TagInfo ON TagInfo.id = TorrentTagInfo.tagId")
+    List<TorrentTagJoin> getAllTorrentTags();
 }
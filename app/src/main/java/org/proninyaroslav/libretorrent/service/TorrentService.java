@@ -48,7 +48,9 @@ import org.proninyaroslav.libretorrent.receiver.NotificationReceiver;
 import org.proninyaroslav.libretorrent.ui.TorrentNotifier;
 import org.proninyaroslav.libretorrent.ui.main.MainActivity;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -275,8 +277,14 @@ public class TorrentService extends Service
         if (shuttingDown.get() || foregroundNotify == null)
             return;
 
-        foregroundDisposable = stateProvider.observeInfoList()
+        /* Updated in place, the order of the first emission is kept */
+        LinkedHashMap<String, TorrentInfo> infoMap = new LinkedHashMap<>();
+        foregroundDisposable = stateProvider.observeInfoChanges()
                 .subscribeOn(Schedulers.io())
+                .map((changes) -> {
+                    changes.applyTo(infoMap);
+                    return new ArrayList<>(infoMap.values());
+                })
                 .flatMapSingle((infoList) ->
                         Flowable.fromIterable(infoList)
                                 .filter(itemsFilter)
@@ -138,6 +138,6 @@ public class DetailTorrentPiecesFragment extends Fragment
         disposables.add(viewModel.observePieces()
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe((pieces) -> binding.pieceMap.setPieces(pieces)));
+                .subscribe((update) -> binding.pieceMap.applyUpdate(update)));
     }
 }
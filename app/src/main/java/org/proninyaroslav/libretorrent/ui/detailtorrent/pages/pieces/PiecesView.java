@@ -30,10 +30,9 @@ import android.view.View;
 import androidx.annotation.NonNull;
 
 import org.proninyaroslav.libretorrent.R;
+import org.proninyaroslav.libretorrent.core.model.data.PiecesUpdate;
 import org.proninyaroslav.libretorrent.core.utils.Utils;
 
-import java.util.Arrays;
-
 /*
  * A widget for display parts map.
  */
@@ -43,7 +42,8 @@ public class PiecesView extends View
     private static final float CELL_SIZE_DP = 20f;
     private static final float BORDER_SIZE_DP  = 1f;
 
-    private boolean[] pieces;
+    /* 64 pieces per word */
+    private long[] pieces;
     private int cells = 0;
     private int cellSize;
     private int borderSize;
@@ -86,18 +86,35 @@ public class PiecesView extends View
         a.recycle();
     }
 
-    public void setPieces(boolean[] pieces)
+    public void applyUpdate(PiecesUpdate update)
     {
-        if (pieces == null || Arrays.equals(this.pieces, pieces))
+        if (update == null)
+            return;
+
+        if (update.isFull()) {
+            int prevCells = cells;
+            cells = update.numPieces;
+            pieces = update.bitset;
+            if (prevCells == cells)
+                invalidate();
+            else
+                requestLayout();
+
             return;
+        }
 
-        int prevLength = (this.pieces != null ? this.pieces.length : 0);
-        cells = pieces.length;
-        this.pieces = pieces;
-        if (prevLength == pieces.length)
+        if (pieces == null)
+            return;
+        /* Set bits in place */
+        boolean changed = false;
+        for (int piece : update.finishedPieces) {
+            if (piece < 0 || piece >= cells || PiecesUpdate.isSet(pieces, piece))
+                continue;
+            pieces[piece >>> 6] |= 1L << piece;
+            changed = true;
+        }
+        if (changed)
             invalidate();
-        else
-            requestLayout();
     }
 
     @Override
@@ -125,8 +142,8 @@ public class PiecesView extends View
 
         int position = 0;
         for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < cols && position < pieces.length; c++) {
-                Paint paint = (pieces[position] ? complete : empty);
+            for (int c = 0; c < cols && position < cells; c++) {
+                Paint paint = (PiecesUpdate.isSet(pieces, position) ? complete : empty);
                 int left = c * stepSize + borderSize + margin;
                 int right = left + stepSize - borderSize * 2;
                 int top = r * stepSize + borderSize;
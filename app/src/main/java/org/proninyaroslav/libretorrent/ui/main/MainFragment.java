@@ -69,7 +69,9 @@ import org.proninyaroslav.libretorrent.ui.customviews.RecyclerViewDividerDecorat
 import org.proninyaroslav.libretorrent.ui.filemanager.FileManagerConfig;
 import org.proninyaroslav.libretorrent.ui.filemanager.FileManagerDialog;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 
 import io.reactivex.Flowable;
 import io.reactivex.Observable;
@@ -284,12 +286,19 @@ public class MainFragment extends Fragment
 
     private Disposable observeTorrents()
     {
-        return viewModel.observeAllTorrentsInfo()
+        return Flowable.defer(() -> {
+                    /* Only changed rows are wrapped, the order of the first emission is kept */
+                    LinkedHashMap<String, TorrentListItem> items = new LinkedHashMap<>();
+                    return viewModel.observeAllTorrentsInfoChanges()
+                            .map((changes) -> {
+                                changes.applyTo(items, TorrentListItem::new);
+                                return new ArrayList<>(items.values());
+                            });
+                })
                 .subscribeOn(Schedulers.io())
-                .flatMapSingle((infoList) ->
-                        Flowable.fromIterable(infoList)
+                .flatMapSingle((itemList) ->
+                        Flowable.fromIterable(itemList)
                                 .filter(viewModel.getFilter())
-                                .map(TorrentListItem::new)
                                 .sorted(viewModel.getSorting())
                                 .toList()
                 )
@@ -32,6 +32,7 @@ import org.proninyaroslav.libretorrent.core.filter.TorrentFilterCollection;
 import org.proninyaroslav.libretorrent.core.model.TorrentEngine;
 import org.proninyaroslav.libretorrent.core.model.TorrentInfoProvider;
 import org.proninyaroslav.libretorrent.core.model.data.TorrentInfo;
+import org.proninyaroslav.libretorrent.core.model.data.TorrentInfoChanges;
 import org.proninyaroslav.libretorrent.core.model.data.entity.TagInfo;
 import org.proninyaroslav.libretorrent.core.sorting.TorrentSorting;
 import org.proninyaroslav.libretorrent.core.sorting.TorrentSortingComparator;
@@ -74,8 +75,8 @@ public class MainViewModel extends AndroidViewModel {
         tagRepo = RepositoryHelper.getTagRepository(application);
     }
 
-    public Flowable<List<TorrentInfo>> observeAllTorrentsInfo() {
-        return stateProvider.observeInfoList();
+    public Flowable<TorrentInfoChanges> observeAllTorrentsInfoChanges() {
+        return stateProvider.observeInfoChanges();
     }
 
     public Single<List<TorrentInfo>> getAllTorrentsInfoSingle() {
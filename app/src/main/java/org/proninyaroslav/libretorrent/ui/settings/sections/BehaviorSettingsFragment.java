@@ -75,6 +75,13 @@ public class BehaviorSettingsFragment extends PreferenceFragmentCompat
             bindOnPreferenceChangeListener(autostart);
         }
 
+        String keyRestorePaused = getString(R.string.pref_key_restore_paused_on_demand);
+        SwitchPreferenceCompat restorePaused = findPreference(keyRestorePaused);
+        if (restorePaused != null) {
+            restorePaused.setChecked(pref.restorePausedOnDemand());
+            bindOnPreferenceChangeListener(restorePaused);
+        }
+
         String keyKeepAlive = getString(R.string.pref_key_keep_alive);
         SwitchPreferenceCompat keepAlive = findPreference(keyKeepAlive);
         if (keepAlive != null) {
@@ -202,6 +209,9 @@ public class BehaviorSettingsFragment extends PreferenceFragmentCompat
             Utils.enableBootReceiver(getActivity(), (boolean)newValue);
             pref.autostart((boolean)newValue);
 
+        } else if (preference.getKey().equals(getString(R.string.pref_key_restore_paused_on_demand))) {
+            pref.restorePausedOnDemand((boolean)newValue);
+
         } else if (preference.getKey().equals(getString(R.string.pref_key_download_and_upload_only_when_charging))) {
             pref.onlyCharging((boolean)newValue);
 
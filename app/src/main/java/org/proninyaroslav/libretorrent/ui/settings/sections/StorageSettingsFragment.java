@@ -129,6 +129,13 @@ public class StorageSettingsFragment extends PreferenceFragmentCompat
             bindOnPreferenceChangeListener(saveTorrentFiles);
         }
 
+        String keyResumeJournal = getString(R.string.pref_key_resume_journal);
+        SwitchPreferenceCompat resumeJournal = findPreference(keyResumeJournal);
+        if (resumeJournal != null) {
+            resumeJournal.setChecked(pref.resumeJournal());
+            bindOnPreferenceChangeListener(resumeJournal);
+        }
+
         String keySaveTorrentFilesIn = getString(R.string.pref_key_save_torrent_files_in);
         Preference saveTorrentFilesIn = findPreference(keySaveTorrentFilesIn);
         if (saveTorrentFilesIn != null) {
@@ -265,6 +272,8 @@ public class StorageSettingsFragment extends PreferenceFragmentCompat
             pref.saveTorrentFiles((boolean)newValue);
         } else if (preference.getKey().equals(getString(R.string.pref_key_watch_dir_delete_file))) {
             pref.watchDirDeleteFile((boolean) newValue);
+        } else if (preference.getKey().equals(getString(R.string.pref_key_resume_journal))) {
+            pref.resumeJournal((boolean)newValue);
         }
 
         return true;
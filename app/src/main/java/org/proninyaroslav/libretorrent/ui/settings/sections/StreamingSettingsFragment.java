@@ -82,6 +82,39 @@ public class StreamingSettingsFragment extends PreferenceFragmentCompat
             port.setText(portValue);
             bindOnPreferenceChangeListener(port);
         }
+
+        String keyCacheSize = getString(R.string.pref_key_streaming_cache_size);
+        EditTextPreference cacheSize = findPreference(keyCacheSize);
+        if (cacheSize != null) {
+            InputFilter[] cacheSizeFilter = new InputFilter[] { InputFilterRange.UNSIGNED_INT };
+            String cacheSizeValue = Integer.toString(pref.streamingCacheSize());
+            cacheSize.setOnBindEditTextListener((editText) -> editText.setFilters(cacheSizeFilter));
+            cacheSize.setSummary(cacheSizeValue);
+            cacheSize.setText(cacheSizeValue);
+            bindOnPreferenceChangeListener(cacheSize);
+        }
+
+        String keyMaxClients = getString(R.string.pref_key_streaming_max_clients);
+        EditTextPreference maxClients = findPreference(keyMaxClients);
+        if (maxClients != null) {
+            InputFilter[] maxClientsFilter = new InputFilter[] { InputFilterRange.UNSIGNED_INT };
+            String maxClientsValue = Integer.toString(pref.streamingMaxClients());
+            maxClients.setOnBindEditTextListener((editText) -> editText.setFilters(maxClientsFilter));
+            maxClients.setSummary(maxClientsValue);
+            maxClients.setText(maxClientsValue);
+            bindOnPreferenceChangeListener(maxClients);
+        }
+
+        String keyMaxQueuedClients = getString(R.string.pref_key_streaming_max_queued_clients);
+        EditTextPreference maxQueuedClients = findPreference(keyMaxQueuedClients);
+        if (maxQueuedClients != null) {
+            InputFilter[] maxQueuedClientsFilter = new InputFilter[] { InputFilterRange.UNSIGNED_INT };
+            String maxQueuedClientsValue = Integer.toString(pref.streamingMaxQueuedClients());
+            maxQueuedClients.setOnBindEditTextListener((editText) -> editText.setFilters(maxQueuedClientsFilter));
+            maxQueuedClients.setSummary(maxQueuedClientsValue);
+            maxQueuedClients.setText(maxQueuedClientsValue);
+            bindOnPreferenceChangeListener(maxQueuedClients);
+        }
     }
 
     @Override
@@ -109,6 +142,28 @@ public class StreamingSettingsFragment extends PreferenceFragmentCompat
                 preference.setSummary(Integer.toString(value));
             }
 
+        } else if (preference.getKey().equals(getString(R.string.pref_key_streaming_cache_size))) {
+            int value = 0;
+            if (!TextUtils.isEmpty((String)newValue))
+                value = Integer.parseInt((String)newValue);
+            pref.streamingCacheSize(value);
+            preference.setSummary(Integer.toString(value));
+
+        } else if (preference.getKey().equals(getString(R.string.pref_key_streaming_max_clients))) {
+            /* At least one connection */
+            int value = 1;
+            if (!TextUtils.isEmpty((String)newValue))
+                value = Math.max(1, Integer.parseInt((String)newValue));
+            pref.streamingMaxClients(value);
+            preference.setSummary(Integer.toString(value));
+
+        } else if (preference.getKey().equals(getString(R.string.pref_key_streaming_max_queued_clients))) {
+            int value = 1;
+            if (!TextUtils.isEmpty((String)newValue))
+                value = Math.max(1, Integer.parseInt((String)newValue));
+            pref.streamingMaxQueuedClients(value);
+            preference.setSummary(Integer.toString(value));
+
         } else if (preference.getKey().equals(getString(R.string.pref_key_streaming_enable))) {
             pref.enableStreaming((boolean)newValue);
         }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IntTimeSeriesTest
+{
+    @Test(expected = IllegalArgumentException.class)
+    public void testSamplesPerPeriodZero()
+    {
+        new IntTimeSeries(0, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPeriodsZero()
+    {
+        new IntTimeSeries(10, 0);
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        IntTimeSeries series = new IntTimeSeries(10, 10);
+        IntTimeSeries.Stats stats = new IntTimeSeries.Stats();
+
+        assertFalse(series.stats(5, stats));
+        assertFalse(series.stats(50, stats));
+        assertEquals(0, stats.count);
+    }
+
+    @Test
+    public void testLastSamples()
+    {
+        IntTimeSeries series = new IntTimeSeries(10, 10);
+        IntTimeSeries.Stats stats = new IntTimeSeries.Stats();
+        for (int i = 1; i <= 25; i++)
+            series.add(i);
+
+        assertTrue(series.stats(5, stats));
+        assertEquals(21, stats.min);
+        assertEquals(25, stats.max);
+        assertEquals(23.0, stats.avg, 0.0001);
+        assertEquals(5, stats.count);
+
+        /* Window greater than added samples */
+        series = new IntTimeSeries(10, 10);
+        series.add(4);
+        series.add(2);
+        assertTrue(series.stats(10, stats));
+        assertEquals(2, stats.min);
+        assertEquals(4, stats.max);
+        assertEquals(3.0, stats.avg, 0.0001);
+        assertEquals(2, stats.count);
+    }
+
+    @Test
+    public void testPeriods()
+    {
+        IntTimeSeries series = new IntTimeSeries(10, 3);
+        IntTimeSeries.Stats stats = new IntTimeSeries.Stats();
+        /* Four complete periods (the first is overwritten) and a half */
+        for (int i = 0; i < 45; i++)
+            series.add(i / 10);
+
+        assertTrue(series.stats(25, stats));
+        assertEquals(2, stats.min);
+        assertEquals(4, stats.max);
+        assertEquals(25, stats.count);
+
+        assertTrue(series.stats(series.capacity(), stats));
+        assertEquals(1, stats.min);
+        assertEquals(4, stats.max);
+        assertEquals(35, stats.count);
+        assertEquals((10 * 1 + 10 * 2 + 10 * 3 + 5 * 4) / 35.0, stats.avg, 0.0001);
+    }
+
+    @Test
+    public void testClear()
+    {
+        IntTimeSeries series = new IntTimeSeries(10, 3);
+        IntTimeSeries.Stats stats = new IntTimeSeries.Stats();
+        for (int i = 0; i < 45; i++)
+            series.add(i);
+        series.clear();
+
+        assertFalse(series.stats(30, stats));
+        series.add(7);
+        assertTrue(series.stats(30, stats));
+        assertEquals(7, stats.min);
+        assertEquals(7, stats.max);
+        assertEquals(1, stats.count);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+import org.proninyaroslav.libretorrent.core.model.TorrentEngineListener;
+import org.proninyaroslav.libretorrent.core.model.data.TorrentStateCode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EngineEventBusTest
+{
+    private static final String BLOCK_ID = "block";
+
+    /*
+     * Records the events, the first event with BLOCK_ID
+     * blocks the delivery until it's released
+     */
+
+    private static class RecordingListener extends TorrentEngineListener
+    {
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch delivered;
+
+        RecordingListener(int expectedEvents)
+        {
+            delivered = new CountDownLatch(expectedEvents);
+        }
+
+        @Override
+        public void onTorrentAdded(@NonNull String id)
+        {
+            if (BLOCK_ID.equals(id)) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            record("added " + id);
+        }
+
+        @Override
+        public void onTorrentStateChanged(@NonNull String id,
+                                          @NonNull TorrentStateCode prevState,
+                                          @NonNull TorrentStateCode curState)
+        {
+            record("state " + id + " " + prevState + " " + curState);
+        }
+
+        @Override
+        public void onSessionError(@NonNull String errorMsg)
+        {
+            record("error " + errorMsg);
+        }
+
+        private void record(String event)
+        {
+            events.add(event);
+            threads.add(Thread.currentThread());
+            delivered.countDown();
+        }
+
+        void await() throws InterruptedException
+        {
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static void block(EngineEventBus bus, RecordingListener listener) throws InterruptedException
+    {
+        bus.post((l) -> l.onTorrentAdded(BLOCK_ID));
+        assertTrue(listener.blocked.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testOrder() throws Exception
+    {
+        EngineEventBus bus = new EngineEventBus();
+        RecordingListener listener = new RecordingListener(100);
+        bus.addListener(listener);
+
+        ArrayList<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String id = Integer.toString(i);
+            bus.post((l) -> l.onTorrentAdded(id));
+            expected.add("added " + id);
+        }
+        listener.await();
+
+        assertEquals(expected, listener.events);
+        assertEquals(0, (int)bus.getQueueDepth().get(listener));
+    }
+
+    @Test
+    public void testCoalescing() throws Exception
+    {
+        EngineEventBus bus = new EngineEventBus();
+        RecordingListener listener = new RecordingListener(5);
+        bus.addListener(listener);
+        block(bus, listener);
+
+        bus.post("error", (l) -> l.onSessionError("1"));
+        bus.postStateChanged("1", TorrentStateCode.STOPPED, TorrentStateCode.PAUSED);
+        bus.postStateChanged("2", TorrentStateCode.SEEDING, TorrentStateCode.CHECKING);
+        bus.postStateChanged("1", TorrentStateCode.PAUSED, TorrentStateCode.SEEDING);
+        bus.post("error", (l) -> l.onSessionError("2"));
+        /* Transition through checking isn't merged */
+        bus.postStateChanged("2", TorrentStateCode.CHECKING, TorrentStateCode.SEEDING);
+        assertEquals(4, (int)bus.getQueueDepth().get(listener));
+
+        listener.release.countDown();
+        listener.await();
+        assertEquals(Arrays.asList(
+                "added " + BLOCK_ID,
+                "state 2 SEEDING CHECKING",
+                "state 1 STOPPED SEEDING",
+                "error 2",
+                "state 2 CHECKING SEEDING"), listener.events);
+    }
+
+    @Test
+    public void testSyncListener() throws Exception
+    {
+        EngineEventBus bus = new EngineEventBus();
+        RecordingListener listener = new RecordingListener(3);
+        bus.addSyncListener(listener);
+
+        bus.post((l) -> l.onTorrentAdded("1"));
+        bus.post("error", (l) -> l.onSessionError("1"));
+        bus.postStateChanged("1", TorrentStateCode.STOPPED, TorrentStateCode.PAUSED);
+        listener.await();
+
+        assertEquals(Arrays.asList(
+                "added 1",
+                "error 1",
+                "state 1 STOPPED PAUSED"), listener.events);
+        for (Thread t : listener.threads)
+            assertSame(Thread.currentThread(), t);
+        assertEquals(0, (int)bus.getQueueDepth().get(listener));
+    }
+
+    @Test
+    public void testQueueLimit() throws Exception
+    {
+        EngineEventBus bus = new EngineEventBus(2);
+        RecordingListener listener = new RecordingListener(3);
+        bus.addListener(listener);
+        block(bus, listener);
+
+        bus.post((l) -> l.onTorrentAdded("1"));
+        bus.post("error", (l) -> l.onSessionError("1"));
+        bus.post((l) -> l.onTorrentAdded("2"));
+        assertEquals(2, (int)bus.getQueueDepth().get(listener));
+        assertEquals(1, bus.getDroppedEvents());
+
+        /* Replaces the pending event */
+        bus.post("error", (l) -> l.onSessionError("2"));
+        assertEquals(2, (int)bus.getQueueDepth().get(listener));
+        assertEquals(1, bus.getDroppedEvents());
+
+        listener.release.countDown();
+        listener.await();
+        assertEquals(Arrays.asList(
+                "added " + BLOCK_ID,
+                "added 1",
+                "error 2"), listener.events);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import org.junit.Test;
+import org.proninyaroslav.libretorrent.core.model.data.ReadPieceInfo;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class PieceWaitersTest
+{
+    @Test
+    public void testPieceFinished()
+    {
+        PieceWaiters waiters = new PieceWaiters();
+        CompletableFuture<Void> first = waiters.awaitFinished(0);
+        CompletableFuture<Void> second = waiters.awaitFinished(0);
+        CompletableFuture<Void> other = waiters.awaitFinished(1);
+
+        waiters.pieceFinished(0);
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        /* Only waiters of the finished piece are completed */
+        assertFalse(other.isDone());
+        assertEquals(1, waiters.size());
+    }
+
+    @Test
+    public void testPieceRead() throws Exception
+    {
+        PieceWaiters waiters = new PieceWaiters();
+        int[] size = new int[1];
+        CompletableFuture<Void> future = waiters.awaitRead(0, (info) -> size[0] = info.size);
+
+        waiters.pieceRead(new ReadPieceInfo(1, 16, 0, null));
+        assertFalse(future.isDone());
+
+        waiters.pieceRead(new ReadPieceInfo(0, 16, 0, null));
+        future.get();
+        assertEquals(16, size[0]);
+        assertEquals(0, waiters.size());
+    }
+
+    @Test
+    public void testPieceReadError()
+    {
+        PieceWaiters waiters = new PieceWaiters();
+        boolean[] called = new boolean[1];
+        CompletableFuture<Void> future = waiters.awaitRead(0, (info) -> called[0] = true);
+
+        waiters.pieceRead(new ReadPieceInfo(0, 0, 0, new Exception("error")));
+        try {
+            future.get();
+            fail();
+
+        } catch (ExecutionException e) {
+            assertEquals("error", e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            fail();
+        }
+        assertFalse(called[0]);
+    }
+
+    @Test
+    public void testCancel()
+    {
+        PieceWaiters waiters = new PieceWaiters();
+        boolean[] called = new boolean[1];
+        CompletableFuture<Void> read = waiters.awaitRead(0, (info) -> called[0] = true);
+        waiters.awaitFinished(1);
+        waiters.awaitFinished(2);
+
+        /* Cancelled waiter is removed */
+        read.cancel(false);
+        assertEquals(2, waiters.size());
+        waiters.pieceRead(new ReadPieceInfo(0, 16, 0, null));
+        assertFalse(called[0]);
+
+        waiters.cancelAll();
+        assertEquals(0, waiters.size());
+    }
+
+    @Test
+    public void testCancelDuringCallback() throws Exception
+    {
+        PieceWaiters waiters = new PieceWaiters();
+        boolean[] cancelled = new boolean[1];
+        CompletableFuture<?>[] read = new CompletableFuture<?>[1];
+        read[0] = waiters.awaitRead(0, (info) -> cancelled[0] = read[0].cancel(false));
+
+        /* Running callback can't be cancelled, the read is completed */
+        waiters.pieceRead(new ReadPieceInfo(0, 16, 0, null));
+        assertFalse(cancelled[0]);
+        assertFalse(read[0].isCancelled());
+        read[0].get();
+        assertEquals(0, waiters.size());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ResumeDataCodecTest
+{
+    private static byte[] makeResumeData(int peers)
+    {
+        StringBuilder sb = new StringBuilder("d8:file-format22:libtorrent resume file5:peers");
+        for (int i = 0; i < peers; i++)
+            sb.append("d2:ip9:127.0.0.14:porti6881ee");
+        sb.append("e");
+
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testCompress()
+    {
+        byte[] data = makeResumeData(100);
+        byte[] encoded = ResumeDataCodec.encode(data);
+
+        assertEquals(ResumeDataCodec.DEFLATE, encoded[0]);
+        assertTrue(encoded.length < data.length / 2);
+        assertArrayEquals(data, ResumeDataCodec.decode(encoded));
+    }
+
+    @Test
+    public void testRaw()
+    {
+        /* Old data */
+        byte[] data = makeResumeData(100);
+        assertSame(data, ResumeDataCodec.decode(data));
+
+        /* Too small */
+        byte[] small = makeResumeData(1);
+        assertSame(small, ResumeDataCodec.encode(small));
+
+        /* Incompressible */
+        byte[] random = new byte[4096];
+        new Random(0).nextBytes(random);
+        random[0] = ResumeDataCodec.RAW;
+        byte[] encoded = ResumeDataCodec.encode(random);
+        assertSame(random, encoded);
+        assertSame(random, ResumeDataCodec.decode(encoded));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownEncoding()
+    {
+        ResumeDataCodec.decode(new byte[] {42, 0, 0});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncated()
+    {
+        byte[] encoded = ResumeDataCodec.encode(makeResumeData(100));
+        ResumeDataCodec.decode(Arrays.copyOf(encoded, encoded.length / 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCorruptedLength()
+    {
+        byte[] encoded = ResumeDataCodec.encode(makeResumeData(100));
+        /* Not allocated */
+        encoded[1] = 0x7f;
+        ResumeDataCodec.decode(encoded);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+import org.proninyaroslav.libretorrent.core.model.data.entity.FastResume;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ResumeDataWriterTest
+{
+    private static final long LONG_INTERVAL = 60000; /* ms */
+    private static final long WAIT_TIMEOUT = 5; /* sec */
+
+    private static class FakeStorage implements ResumeDataWriter.Storage
+    {
+        final List<List<FastResume>> batches = new ArrayList<>();
+        String failingId;
+
+        @Override
+        public synchronized void write(@NonNull List<FastResume> batch) throws Exception
+        {
+            for (FastResume fastResume : batch) {
+                if (fastResume.torrentId.equals(failingId))
+                    throw new Exception("Write failed");
+            }
+            batches.add(new ArrayList<>(batch));
+        }
+    }
+
+    @Test
+    public void testKeepLatest() throws Exception
+    {
+        FakeStorage storage = new FakeStorage();
+        ResumeDataWriter writer = new ResumeDataWriter(storage, LONG_INTERVAL, 10);
+
+        CompletableFuture<Void> first = writer.write(new FastResume("1", new byte[] {1}));
+        CompletableFuture<Void> second = writer.write(new FastResume("1", new byte[] {2}));
+        writer.write(new FastResume("2", new byte[] {3}));
+        assertEquals(2, writer.size());
+        assertFalse(first.isDone());
+
+        writer.flush();
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertEquals(0, writer.size());
+        assertEquals(1, storage.batches.size());
+
+        List<FastResume> batch = storage.batches.get(0);
+        assertEquals(2, batch.size());
+        assertEquals("1", batch.get(0).torrentId);
+        assertArrayEquals(new byte[] {2}, batch.get(0).data);
+    }
+
+    @Test
+    public void testEncode() throws Exception
+    {
+        FakeStorage storage = new FakeStorage();
+        ResumeDataWriter writer = new ResumeDataWriter(storage, LONG_INTERVAL, 10);
+
+        byte[] data = new byte[ResumeDataCodec.MIN_COMPRESS_SIZE * 4];
+        Arrays.fill(data, (byte)'d');
+        writer.write(new FastResume("1", data));
+        writer.flush();
+
+        byte[] written = storage.batches.get(0).get(0).data;
+        assertEquals(ResumeDataCodec.DEFLATE, written[0]);
+        assertArrayEquals(data, ResumeDataCodec.decode(written));
+    }
+
+    @Test
+    public void testFlushOnMaxPending() throws Exception
+    {
+        FakeStorage storage = new FakeStorage();
+        ResumeDataWriter writer = new ResumeDataWriter(storage, LONG_INTERVAL, 3);
+
+        writer.write(new FastResume("1", new byte[0]));
+        writer.write(new FastResume("2", new byte[0]));
+        CompletableFuture<Void> future = writer.write(new FastResume("3", new byte[0]));
+
+        future.get(WAIT_TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(1, storage.batches.size());
+        assertEquals(3, storage.batches.get(0).size());
+    }
+
+    @Test
+    public void testFlushOnInterval() throws Exception
+    {
+        FakeStorage storage = new FakeStorage();
+        ResumeDataWriter writer = new ResumeDataWriter(storage, 10, 10);
+
+        writer.write(new FastResume("1", new byte[0]))
+                .get(WAIT_TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(1, storage.batches.size());
+    }
+
+    @Test
+    public void testFailedWrite() throws Exception
+    {
+        FakeStorage storage = new FakeStorage();
+        storage.failingId = "2";
+        ResumeDataWriter writer = new ResumeDataWriter(storage, LONG_INTERVAL, 10);
+
+        CompletableFuture<Void> ok = writer.write(new FastResume("1", new byte[0]));
+        CompletableFuture<Void> failed = writer.write(new FastResume("2", new byte[0]));
+        writer.flush();
+
+        /* Other data of the batch is written separately */
+        assertTrue(ok.isDone() && !ok.isCompletedExceptionally());
+        assertEquals(1, storage.batches.size());
+        try {
+            failed.get();
+            fail("Exception must be thrown");
+        } catch (ExecutionException e) {
+            /* Expected */
+        }
+    }
+
+    @Test
+    public void testRemove()
+    {
+        FakeStorage storage = new FakeStorage();
+        ResumeDataWriter writer = new ResumeDataWriter(storage, LONG_INTERVAL, 10);
+
+        CompletableFuture<Void> future = writer.write(new FastResume("1", new byte[0]));
+        writer.remove("1");
+        assertTrue(future.isDone());
+
+        writer.flush();
+        assertTrue(storage.batches.isEmpty());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.proninyaroslav.libretorrent.core.model.session;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ResumeSaveSchedulerTest
+{
+    private static final long MIN_SAVE_INTERVAL = 10000; /* ms */
+
+    @Test
+    public void testBudget()
+    {
+        ResumeSaveScheduler scheduler = new ResumeSaveScheduler(2, 2, MIN_SAVE_INTERVAL);
+        for (int i = 0; i < 5; i++)
+            scheduler.markDirty(Integer.toString(i));
+
+        assertEquals(Arrays.asList("0", "1"), scheduler.poll(0));
+        /* Budget is spent */
+        assertTrue(scheduler.poll(100).isEmpty());
+        assertEquals(Arrays.asList("2", "3"), scheduler.poll(1000));
+        /* No more than the max burst after idle time */
+        scheduler.markDirty("5");
+        scheduler.markDirty("6");
+        assertEquals(Arrays.asList("4", "5"), scheduler.poll(10000));
+        assertEquals(1, scheduler.size());
+    }
+
+    @Test
+    public void testSavedOutside()
+    {
+        ResumeSaveScheduler scheduler = new ResumeSaveScheduler(1, 1, MIN_SAVE_INTERVAL);
+        scheduler.markDirty("1");
+        scheduler.markDirty("2");
+        /* Forced save doesn't spend the budget */
+        scheduler.onSaved("1", 0);
+        assertFalse(scheduler.isDirty("1"));
+
+        assertEquals(Collections.singletonList("2"), scheduler.poll(0));
+        /* Periodic save waits for the interval after the forced one */
+        scheduler.markDirty("1");
+        assertTrue(scheduler.poll(1000).isEmpty());
+        assertEquals(Collections.singletonList("1"), scheduler.poll(MIN_SAVE_INTERVAL));
+    }
+
+    @Test
+    public void testMinSaveInterval()
+    {
+        ResumeSaveScheduler scheduler = new ResumeSaveScheduler(10, 10, MIN_SAVE_INTERVAL);
+        scheduler.markDirty("1");
+        assertEquals(Collections.singletonList("1"), scheduler.poll(0));
+
+        scheduler.markDirty("1");
+        scheduler.markDirty("2");
+        /* The torrent that was saved recently waits, the others don't */
+        assertEquals(Collections.singletonList("2"), scheduler.poll(1000));
+        assertTrue(scheduler.isDirty("1"));
+        assertEquals(Collections.singletonList("1"), scheduler.poll(MIN_SAVE_INTERVAL));
+    }
+
+    @Test
+    public void testDrain()
+    {
+        ResumeSaveScheduler scheduler = new ResumeSaveScheduler(1, 1, MIN_SAVE_INTERVAL);
+        scheduler.markDirty("1");
+        scheduler.markDirty("2");
+        scheduler.markDirty("3");
+        assertTrue(scheduler.remove("2"));
+        assertFalse(scheduler.remove("2"));
+
+        assertEquals(Arrays.asList("1", "3"), scheduler.drain());
+        assertEquals(0, scheduler.size());
+        assertTrue(scheduler.poll(0).isEmpty());
+    }
+}
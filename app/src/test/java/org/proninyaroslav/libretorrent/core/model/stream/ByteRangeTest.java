@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ByteRangeTest
+{
+    private static final long SIZE = 1000;
+
+    private static void assertRange(long start, long end, ByteRange range)
+    {
+        assertEquals(start, range.start);
+        assertEquals(end, range.end);
+    }
+
+    @Test
+    public void testSingleRange()
+    {
+        List<ByteRange> ranges = ByteRange.parse("bytes=100-199", SIZE);
+        assertEquals(1, ranges.size());
+        assertRange(100, 199, ranges.get(0));
+        assertEquals(100, ranges.get(0).length());
+        assertEquals("bytes 100-199/1000", ranges.get(0).toContentRange(SIZE));
+
+        /* Open-ended and clamped */
+        assertRange(900, 999, ByteRange.parse("bytes=900-", SIZE).get(0));
+        assertRange(900, 999, ByteRange.parse("bytes=900-5000", SIZE).get(0));
+    }
+
+    @Test
+    public void testSuffixRange()
+    {
+        assertRange(900, 999, ByteRange.parse("bytes=-100", SIZE).get(0));
+        assertRange(0, 999, ByteRange.parse("bytes=-5000", SIZE).get(0));
+        assertTrue(ByteRange.parse("bytes=-0", SIZE).isEmpty());
+    }
+
+    @Test
+    public void testMultipleRanges()
+    {
+        List<ByteRange> ranges = ByteRange.parse("bytes=900-, 0-99", SIZE);
+        assertEquals(2, ranges.size());
+        assertRange(0, 99, ranges.get(0));
+        assertRange(900, 999, ranges.get(1));
+
+        /* Overlapping and adjacent ranges are coalesced */
+        ranges = ByteRange.parse("bytes=0-99,50-149,150-199,-100", SIZE);
+        assertEquals(2, ranges.size());
+        assertRange(0, 199, ranges.get(0));
+        assertRange(900, 999, ranges.get(1));
+    }
+
+    @Test
+    public void testUnsatisfiable()
+    {
+        assertTrue(ByteRange.parse("bytes=1000-", SIZE).isEmpty());
+        assertTrue(ByteRange.parse("bytes=1000-1100,2000-", SIZE).isEmpty());
+        /* Unsatisfiable ranges are skipped */
+        assertEquals(1, ByteRange.parse("bytes=1000-1100,0-1", SIZE).size());
+    }
+
+    @Test
+    public void testInvalid()
+    {
+        assertNull(ByteRange.parse("items=0-1", SIZE));
+        assertNull(ByteRange.parse("bytes=1", SIZE));
+        assertNull(ByteRange.parse("bytes=a-b", SIZE));
+        assertNull(ByteRange.parse("bytes=10-5", SIZE));
+        assertNull(ByteRange.parse("bytes=-", SIZE));
+
+        StringBuilder sb = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= ByteRange.MAX_RANGES; i++)
+            sb.append(',').append(i * 2).append('-').append(i * 2);
+        assertNull(ByteRange.parse(sb.toString(), SIZE));
+    }
+}
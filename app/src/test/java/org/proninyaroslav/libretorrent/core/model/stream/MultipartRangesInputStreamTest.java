@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MultipartRangesInputStreamTest
+{
+    private static final String BOUNDARY = "boundary";
+    private static final String CONTENT_TYPE = "application/octet-stream";
+
+    private static String readAll(InputStream is, int bufSize) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[bufSize];
+        int n;
+        while ((n = is.read(buf)) != -1)
+            out.write(buf, 0, n);
+
+        return out.toString("US-ASCII");
+    }
+
+    @Test
+    public void testRead() throws IOException
+    {
+        byte[] data = "0123456789".getBytes(StandardCharsets.US_ASCII);
+        List<ByteRange> ranges = Arrays.asList(new ByteRange(1, 2), new ByteRange(7, 9));
+        String expected = "--boundary\r\n" +
+                "Content-Type: application/octet-stream\r\n" +
+                "Content-Range: bytes 1-2/10\r\n" +
+                "\r\n" +
+                "12\r\n" +
+                "--boundary\r\n" +
+                "Content-Type: application/octet-stream\r\n" +
+                "Content-Range: bytes 7-9/10\r\n" +
+                "\r\n" +
+                "789\r\n" +
+                "--boundary--\r\n";
+
+        for (int bufSize : new int[] {1, 3, 1024}) {
+            MultipartRangesInputStream is = new MultipartRangesInputStream(
+                    new ByteArrayInputStream(data), ranges, BOUNDARY, CONTENT_TYPE, data.length);
+            assertEquals(expected, readAll(is, bufSize));
+        }
+        assertEquals(expected.length(),
+                MultipartRangesInputStream.contentLength(ranges, BOUNDARY, CONTENT_TYPE, data.length));
+    }
+
+    @Test
+    public void testSourceEnded() throws IOException
+    {
+        byte[] data = "0123".getBytes(StandardCharsets.US_ASCII);
+        List<ByteRange> ranges = Arrays.asList(new ByteRange(0, 0), new ByteRange(8, 9));
+        MultipartRangesInputStream is = new MultipartRangesInputStream(
+                new ByteArrayInputStream(data), ranges, BOUNDARY, CONTENT_TYPE, 10);
+
+        String body = readAll(is, 1024);
+        assertTrue(body.endsWith("Content-Range: bytes 8-9/10\r\n\r\n"));
+    }
+}
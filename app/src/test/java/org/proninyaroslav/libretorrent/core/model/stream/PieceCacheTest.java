@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PieceCacheTest
+{
+    private static final String TORRENT_1 = "1";
+    private static final String TORRENT_2 = "2";
+    private static final int PIECE_LENGTH = 16;
+
+    private static byte[] makePiece(PieceCache cache, int value)
+    {
+        byte[] buf = cache.acquireBuffer(PIECE_LENGTH);
+        for (int i = 0; i < buf.length; i++)
+            buf[i] = (byte)(value + i);
+
+        return buf;
+    }
+
+    @Test
+    public void testRead()
+    {
+        PieceCache cache = new PieceCache(PIECE_LENGTH * 4);
+        cache.put(TORRENT_1, 0, makePiece(cache, 0), PIECE_LENGTH);
+        /* Last piece is smaller than the rest */
+        cache.put(TORRENT_1, 1, makePiece(cache, 100), 10);
+
+        byte[] b = new byte[8];
+        assertTrue(cache.read(TORRENT_1, 0, 4, b, 2, 6));
+        assertArrayEquals(new byte[] {0, 0, 4, 5, 6, 7, 8, 9}, b);
+        assertTrue(cache.read(TORRENT_1, 1, 2, b, 0, 8));
+        assertEquals(109, b[7]);
+
+        assertFalse(cache.read(TORRENT_1, 1, 4, b, 0, 8));
+        assertFalse(cache.read(TORRENT_2, 0, 0, b, 0, 1));
+        assertFalse(cache.read(TORRENT_1, 2, 0, b, 0, 1));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed()
+    {
+        PieceCache cache = new PieceCache(PIECE_LENGTH * 3);
+        for (int i = 0; i < 3; i++)
+            cache.put(TORRENT_1, i, makePiece(cache, i), PIECE_LENGTH);
+
+        byte[] b = new byte[1];
+        assertTrue(cache.read(TORRENT_1, 0, 0, b, 0, 1));
+
+        cache.put(TORRENT_2, 0, makePiece(cache, 3), PIECE_LENGTH);
+        assertTrue(cache.contains(TORRENT_1, 0));
+        assertFalse(cache.contains(TORRENT_1, 1));
+        assertTrue(cache.contains(TORRENT_1, 2));
+        assertTrue(cache.contains(TORRENT_2, 0));
+        assertEquals(PIECE_LENGTH * 3, cache.getSize());
+    }
+
+    @Test
+    public void testReuseBuffers()
+    {
+        PieceCache cache = new PieceCache(PIECE_LENGTH * 2);
+        byte[] first = makePiece(cache, 0);
+        cache.put(TORRENT_1, 0, first, PIECE_LENGTH);
+        cache.put(TORRENT_1, 1, makePiece(cache, 1), PIECE_LENGTH);
+
+        /* The least recently used piece gives its buffer */
+        byte[] buf = cache.acquireBuffer(PIECE_LENGTH);
+        assertSame(first, buf);
+        assertFalse(cache.contains(TORRENT_1, 0));
+        assertEquals(PIECE_LENGTH, cache.getSize());
+
+        cache.releaseBuffer(buf);
+        assertEquals(PIECE_LENGTH * 2, cache.getSize());
+        assertSame(buf, cache.acquireBuffer(PIECE_LENGTH));
+    }
+
+    @Test
+    public void testRemoveTorrent()
+    {
+        PieceCache cache = new PieceCache(PIECE_LENGTH * 4);
+        cache.put(TORRENT_1, 0, makePiece(cache, 0), PIECE_LENGTH);
+        cache.put(TORRENT_1, 1, makePiece(cache, 1), PIECE_LENGTH);
+        cache.put(TORRENT_2, 0, makePiece(cache, 2), PIECE_LENGTH);
+
+        cache.remove(TORRENT_1);
+        assertFalse(cache.contains(TORRENT_1, 0));
+        assertFalse(cache.contains(TORRENT_1, 1));
+        assertTrue(cache.contains(TORRENT_2, 0));
+        /* Buffers are kept for reuse */
+        assertEquals(PIECE_LENGTH * 3, cache.getSize());
+    }
+
+    @Test
+    public void testMaxSize()
+    {
+        PieceCache cache = new PieceCache(PIECE_LENGTH * 3);
+        for (int i = 0; i < 3; i++)
+            cache.put(TORRENT_1, i, makePiece(cache, i), PIECE_LENGTH);
+
+        cache.setMaxSize(PIECE_LENGTH);
+        assertEquals(PIECE_LENGTH, cache.getSize());
+        assertTrue(cache.contains(TORRENT_1, 2));
+
+        /* Disabled */
+        cache.setMaxSize(0);
+        cache.put(TORRENT_1, 3, new byte[PIECE_LENGTH], PIECE_LENGTH);
+        assertFalse(cache.contains(TORRENT_1, 3));
+        assertEquals(0, cache.getSize());
+    }
+}
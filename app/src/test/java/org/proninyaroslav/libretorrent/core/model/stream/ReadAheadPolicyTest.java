@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReadAheadPolicyTest
+{
+    private static final int MiB = 1024 * 1024;
+
+    @Test
+    public void testUnknownRate()
+    {
+        ReadAheadPolicy policy = new ReadAheadPolicy();
+
+        assertEquals(0, policy.getRate());
+        assertEquals(ReadAheadPolicy.DEFAULT_WINDOW, policy.windowSize(MiB));
+        assertEquals(ReadAheadPolicy.DEFAULT_PIECE_DEADLINE, policy.deadline(0, MiB));
+        assertEquals(ReadAheadPolicy.DEFAULT_PIECE_DEADLINE * 3, policy.deadline(2, 3 * MiB));
+    }
+
+    @Test
+    public void testRate()
+    {
+        ReadAheadPolicy policy = new ReadAheadPolicy();
+        /* 1 MiB/s */
+        long now = 0;
+        for (int i = 0; i <= 8; i++, now += 125)
+            policy.onRead(MiB / 8, now);
+        assertEquals(MiB, policy.getRate());
+
+        /* Smoothed */
+        policy.onRead(2 * MiB, now + 1000);
+        assertTrue(policy.getRate() > MiB && policy.getRate() < 2 * MiB);
+    }
+
+    @Test
+    public void testPause()
+    {
+        ReadAheadPolicy policy = new ReadAheadPolicy();
+        policy.onRead(MiB, 0);
+        policy.onRead(MiB, 1000);
+        assertEquals(MiB, policy.getRate());
+
+        /* Time without reads isn't taken into account */
+        long now = 1000 + ReadAheadPolicy.MAX_IDLE_INTERVAL + 1;
+        policy.onRead(MiB, now);
+        assertEquals(MiB, policy.getRate());
+        policy.onRead(MiB, now + 1000);
+        assertEquals(MiB, policy.getRate());
+    }
+
+    @Test
+    public void testWindowScalesWithRate()
+    {
+        ReadAheadPolicy policy = new ReadAheadPolicy();
+        /* 1 MiB/s, 20 MiB ahead */
+        policy.onRead(0, 0);
+        policy.onRead(MiB, 1000);
+
+        assertEquals(20, policy.windowSize(MiB));
+        assertEquals(5, policy.windowSize(4 * MiB));
+        /* Large pieces */
+        assertEquals(ReadAheadPolicy.MIN_WINDOW, policy.windowSize(16 * MiB));
+        /* Small pieces */
+        assertEquals(ReadAheadPolicy.MAX_WINDOW, policy.windowSize(16 * 1024));
+    }
+
+    @Test
+    public void testGraduatedDeadlines()
+    {
+        ReadAheadPolicy policy = new ReadAheadPolicy();
+        /* 1 MiB/s */
+        policy.onRead(0, 0);
+        policy.onRead(MiB, 1000);
+
+        assertEquals(ReadAheadPolicy.MIN_PIECE_DEADLINE, policy.deadline(0, 0));
+        assertEquals(2000, policy.deadline(1, 4 * MiB));
+        assertEquals(5000, policy.deadline(2, 10 * MiB));
+        assertEquals(ReadAheadPolicy.READ_AHEAD_TIME, policy.deadline(10, 100 * MiB));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.proninyaroslav.libretorrent.core.model.stream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StreamMetricsTest
+{
+    @Test
+    public void testFirstByte()
+    {
+        StreamMetrics metrics = new StreamMetrics("1", 0, 1000);
+        assertEquals(-1, metrics.getStats().timeToFirstByte);
+
+        /* Startup delay isn't a stall */
+        metrics.onPieceWait(2000);
+        metrics.onServed(100, 3500);
+        metrics.onServed(100, 4000);
+
+        StreamStats stats = metrics.getStats();
+        assertEquals(2500, stats.timeToFirstByte);
+        assertEquals(0, stats.stallCount);
+        assertEquals(2000, stats.pieceWaitTime);
+        assertEquals(200, stats.bytesServed);
+    }
+
+    @Test
+    public void testStalls()
+    {
+        StreamMetrics metrics = new StreamMetrics("1", 0, 0);
+        metrics.onServed(100, 0);
+
+        metrics.onPieceWait(StreamMetrics.STALL_THRESHOLD - 1);
+        metrics.onPieceWait(StreamMetrics.STALL_THRESHOLD);
+        metrics.onPieceWait(1000);
+        metrics.onReadWait(10);
+
+        StreamStats stats = metrics.getStats();
+        assertEquals(2, stats.stallCount);
+        assertEquals(StreamMetrics.STALL_THRESHOLD + 1000, stats.stallTime);
+        assertEquals(StreamMetrics.STALL_THRESHOLD * 2 - 1 + 1000, stats.pieceWaitTime);
+        assertEquals(10, stats.readWaitTime);
+    }
+
+    @Test
+    public void testThroughput()
+    {
+        StreamMetrics metrics = new StreamMetrics("1", 0, 0);
+        metrics.onServed(1000, 1000);
+        assertEquals(0, metrics.getStats().throughput);
+
+        metrics.onServed(1000, 2000);
+        metrics.onServed(2000, 3000);
+        assertEquals(2000, metrics.getStats().throughput);
+    }
+
+    @Test
+    public void testCacheHitRate()
+    {
+        StreamMetrics metrics = new StreamMetrics("1", 0, 0);
+        assertEquals(-1, metrics.getStats().cacheHitRate, 0);
+
+        metrics.onCacheHit();
+        metrics.onCacheHit();
+        metrics.onCacheHit();
+        metrics.onCacheMiss();
+        metrics.onFileRead();
+
+        StreamStats stats = metrics.getStats();
+        assertEquals(0.75, stats.cacheHitRate, 0);
+        assertEquals(1, stats.fileReads);
+    }
+}
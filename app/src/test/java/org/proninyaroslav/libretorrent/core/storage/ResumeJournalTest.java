@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2022 Yaroslav Pronin <proninyaroslav@mail.ru>
+ *
+ * This file is part of LibreTorrent.
+ *
+ * LibreTorrent is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibreTorrent is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LibreTorrent.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.proninyaroslav.libretorrent.core.storage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class ResumeJournalTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] makeData(int size, int value)
+    {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++)
+            data[i] = (byte)(value + i);
+
+        return data;
+    }
+
+    @Test
+    public void testPutGet() throws Exception
+    {
+        File dir = folder.newFolder();
+        try (ResumeJournal journal = new ResumeJournal(dir, ResumeJournal.DEFAULT_MAX_SEGMENT_SIZE)) {
+            journal.put("1", makeData(10, 0));
+            journal.put("2", makeData(20, 1));
+            journal.put("1", makeData(5, 2));
+
+            assertEquals(2, journal.size());
+            assertArrayEquals(makeData(5, 2), journal.get("1"));
+            assertArrayEquals(makeData(20, 1), journal.get("2"));
+            assertNull(journal.get("3"));
+
+            journal.remove("2");
+            assertNull(journal.get("2"));
+            assertEquals(1, journal.size());
+        }
+        assertTrue(ResumeJournal.exists(dir));
+    }
+
+    @Test
+    public void testReopen() throws Exception
+    {
+        File dir = folder.newFolder();
+        /* Small segments */
+        try (ResumeJournal journal = new ResumeJournal(dir, 64)) {
+            for (int i = 0; i < 10; i++)
+                journal.put(Integer.toString(i), makeData(30, i));
+            journal.remove("5");
+            assertTrue(journal.getSegmentCount() > 1);
+        }
+
+        try (ResumeJournal journal = new ResumeJournal(dir, 64)) {
+            assertEquals(9, journal.size());
+            assertNull(journal.get("5"));
+            assertArrayEquals(makeData(30, 9), journal.get("9"));
+        }
+    }
+
+    @Test
+    public void testTornWrite() throws Exception
+    {
+        File dir = folder.newFolder();
+        File segment = new File(dir, "00000000.seg");
+        try (ResumeJournal journal = new ResumeJournal(dir, ResumeJournal.DEFAULT_MAX_SEGMENT_SIZE)) {
+            journal.put("1", makeData(10, 0));
+            journal.put("2", makeData(10, 1));
+        }
+        /* Cut the last record */
+        try (RandomAccessFile f = new RandomAccessFile(segment, "rw")) {
+            f.setLength(f.length() - 3);
+        }
+
+        try (ResumeJournal journal = new ResumeJournal(dir, ResumeJournal.DEFAULT_MAX_SEGMENT_SIZE)) {
+            assertEquals(1, journal.size());
+            assertArrayEquals(makeData(10, 0), journal.get("1"));
+
+            /* Appended after the truncated record */
+            journal.put("3", makeData(10, 2));
+        }
+        try (ResumeJournal journal = new ResumeJournal(dir, ResumeJournal.DEFAULT_MAX_SEGMENT_SIZE)) {
+            assertEquals(2, journal.size());
+            assertArrayEquals(makeData(10, 2), journal.get("3"));
+        }
+    }
+
+    @Test
+    public void testCompact() throws Exception
+    {
+        File dir = folder.newFolder();
+        try (ResumeJournal journal = new ResumeJournal(dir, 256)) {
+            HashMap<String, byte[]> batch = new HashMap<>();
+            for (int i = 0; i < 5; i++)
+                batch.put(Integer.toString(i), makeData(100, i));
+            for (int i = 0; i < 4; i++)
+                journal.putAll(batch);
+            journal.remove("0");
+            assertTrue(journal.getLiveBytes() < journal.getTotalBytes() / 2);
+
+            journal.compact();
+            assertEquals(1, journal.getSegmentCount());
+            assertEquals(journal.getTotalBytes() - 8, journal.getLiveBytes());
+            assertEquals(4, journal.size());
+            assertArrayEquals(makeData(100, 4), journal.get("4"));
+
+            journal.put("5", makeData(10, 5));
+        }
+
+        try (ResumeJournal journal = new ResumeJournal(dir, 256)) {
+            assertEquals(5, journal.size());
+            assertNull(journal.get("0"));
+            assertArrayEquals(makeData(100, 1), journal.get("1"));
+            assertArrayEquals(makeData(10, 5), journal.get("5"));
+        }
+    }
+
+    @Test
+    public void testWriteDuringCompaction() throws Exception
+    {
+        File dir = folder.newFolder();
+        try (ResumeJournal journal = new ResumeJournal(dir, 4096)) {
+            for (int i = 0; i < 100; i++)
+                journal.put(Integer.toString(i), makeData(100, i));
+
+            Exception[] error = new Exception[1];
+            Thread compaction = new Thread(() -> {
+                try {
+                    journal.compact();
+                } catch (Exception e) {
+                    error[0] = e;
+                }
+            });
+            compaction.start();
+            /* Writes aren't blocked by the copy, the newer records are kept */
+            for (int i = 0; i < 100; i += 2)
+                journal.put(Integer.toString(i), makeData(10, i + 1));
+            journal.remove("1");
+            compaction.join();
+            assertNull(error[0]);
+
+            assertEquals(99, journal.size());
+            assertNull(journal.get("1"));
+            assertArrayEquals(makeData(10, 1), journal.get("0"));
+            assertArrayEquals(makeData(100, 3), journal.get("3"));
+        }
+
+        try (ResumeJournal journal = new ResumeJournal(dir, 4096)) {
+            assertEquals(99, journal.size());
+            assertNull(journal.get("1"));
+            for (int i = 0; i < 100; i += 2)
+                assertArrayEquals(makeData(10, i + 1), journal.get(Integer.toString(i)));
+            assertArrayEquals(makeData(100, 99), journal.get("99"));
+        }
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception
+    {
+        File dir = folder.newFolder();
+        try (ResumeJournal journal = new ResumeJournal(dir, 64)) {
+            for (int i = 0; i < 5; i++)
+                journal.put(Integer.toString(i), makeData(30, i));
+        }
+        assertTrue(new File(dir, "index.chk").exists());
+
+        /* Not closed, the records after the checkpoint are replayed */
+        ResumeJournal crashed = new ResumeJournal(dir, 64);
+        crashed.put("5", makeData(30, 5));
+        crashed.remove("2");
+        crashed.put("0", makeData(10, 6));
+
+        try (ResumeJournal journal = new ResumeJournal(dir, 64)) {
+            assertEquals(5, journal.size());
+            assertNull(journal.get("2"));
+            assertArrayEquals(makeData(10, 6), journal.get("0"));
+            assertArrayEquals(makeData(30, 4), journal.get("4"));
+            assertArrayEquals(makeData(30, 5), journal.get("5"));
+        }
+        crashed.close();
+    }
+
+    @Test
+    public void testDamagedCheckpoint() throws Exception
+    {
+        File dir = folder.newFolder();
+        try (ResumeJournal journal = new ResumeJournal(dir, ResumeJournal.DEFAULT_MAX_SEGMENT_SIZE)) {
+            journal.put("1", makeData(10, 0));
+            journal.put("2", makeData(10, 1));
+        }
+        try (RandomAccessFile f = new RandomAccessFile(new File(dir, "index.chk"), "rw")) {
+            f.seek(f.length() - 1);
+            f.write(f.read() ^ 0xff);
+        }
+
+        /* All segments are replayed */
+        try (ResumeJournal journal = new ResumeJournal(dir, ResumeJournal.DEFAULT_MAX_SEGMENT_SIZE)) {
+            assertEquals(2, journal.size());
+            assertArrayEquals(makeData(10, 0), journal.get("1"));
+            assertArrayEquals(makeData(10, 1), journal.get("2"));
+        }
+    }
+
+    @Test
+    public void testDamagedRecord() throws Exception
+    {
+        File dir = folder.newFolder();
+        try (ResumeJournal journal = new ResumeJournal(dir, ResumeJournal.DEFAULT_MAX_SEGMENT_SIZE)) {
+            journal.put("1", makeData(10, 0));
+            journal.put("2", makeData(10, 1));
+        }
+        /* Data of the first record: segment header, lengths, key */
+        try (RandomAccessFile f = new RandomAccessFile(new File(dir, "00000000.seg"), "rw")) {
+            f.seek(8 + 8 + 1);
+            f.write(0xff);
+        }
+
+        /* Loaded from the checkpoint, the checksum is verified on read */
+        try (ResumeJournal journal = new ResumeJournal(dir, ResumeJournal.DEFAULT_MAX_SEGMENT_SIZE)) {
+            assertEquals(2, journal.size());
+            assertNull(journal.get("1"));
+            assertArrayEquals(makeData(10, 1), journal.get("2"));
+            assertEquals(1, journal.size());
+        }
+    }
+
+    @Test
+    public void testInterruptedCompaction() throws Exception
+    {
+        File dir = folder.newFolder();
+        try (ResumeJournal journal = new ResumeJournal(dir, ResumeJournal.DEFAULT_MAX_SEGMENT_SIZE)) {
+            journal.put("1", makeData(10, 0));
+        }
+        File tmp = new File(dir, "00000001.seg.tmp");
+        assertTrue(tmp.createNewFile());
+
+        try (ResumeJournal journal = new ResumeJournal(dir, ResumeJournal.DEFAULT_MAX_SEGMENT_SIZE)) {
+            assertFalse(tmp.exists());
+            assertArrayEquals(makeData(10, 0), journal.get("1"));
+        }
+
+        ResumeJournal.delete(dir);
+        assertFalse(ResumeJournal.exists(dir));
+    }
+}